@@ -0,0 +1,34 @@
+package net.seblit.packeteer;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for a {@link Client} waiting for acknowledgement of one send attempt
+ */
+@Name("net.seblit.packeteer.AckWait")
+@Label("Ack Wait")
+@Category("Packeteer")
+@Description("Waiting for acknowledgement of a send attempt, including packets received meanwhile")
+@StackTrace(false)
+@Enabled(false)
+final class AckWaitEvent extends Event {
+
+    @Label("Message ID")
+    byte messageId;
+
+    @Label("Type")
+    byte type;
+
+    @Label("Attempt")
+    int attempt;
+
+    @Label("Acknowledged")
+    boolean acknowledged;
+
+}
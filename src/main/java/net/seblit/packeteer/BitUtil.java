@@ -55,4 +55,51 @@ public class BitUtil {
     public static int intFrom16Bit(byte low, byte high) {
         return ((high & 0xFF) << 8) | (low & 0xFF);
     }
+
+    /**
+     * Creates an int from up to 4 bytes ordered from low to high
+     *
+     * @param data   The array containing the bytes
+     * @param offset The index of the lowest byte within data
+     * @param length The count of bytes (0-4) to read
+     * @return an int with its lower bits constructed from the provided bytes
+     */
+    public static int intFromBytes(byte[] data, int offset, int length) {
+        int result = 0;
+        for (int i = 0; i < length; i++) {
+            result |= (data[offset + i] & 0xFF) << 8 * i;
+        }
+        return result;
+    }
+
+    /**
+     * Writes an unsigned variable length int, 7 bits per byte from low to high. The highest bit of each byte is set if
+     * another byte follows
+     *
+     * @param target The array to write to
+     * @param offset The index of the first byte to write
+     * @param value  The value to write, interpreted as unsigned
+     * @return the index following the last written byte
+     */
+    public static int putVarInt(byte[] target, int offset, int value) {
+        while ((value & ~0x7F) != 0) {
+            target[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        target[offset++] = (byte) value;
+        return offset;
+    }
+
+    /**
+     * @param value The value, interpreted as unsigned
+     * @return the count of bytes (1-5) written by {@link #putVarInt(byte[], int, int)} for the value
+     */
+    public static int getVarIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            size++;
+            value >>>= 7;
+        }
+        return size;
+    }
 }
@@ -0,0 +1,36 @@
+package net.seblit.packeteer;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for a frame a {@link Client} discarded due to a checksum mismatch. Message ID, type and payload
+ * size are only set if the header was valid
+ */
+@Name("net.seblit.packeteer.ChecksumReject")
+@Label("Checksum Reject")
+@Category("Packeteer")
+@Description("A frame discarded because its header or payload checksum didn't match")
+@StackTrace(false)
+final class ChecksumRejectEvent extends Event {
+
+    @Label("Header")
+    @Description("Whether the header checksum didn't match, otherwise the payload checksum didn't")
+    boolean header;
+
+    @Label("Message ID")
+    byte messageId;
+
+    @Label("Type")
+    byte type;
+
+    @Label("Payload Size")
+    @DataAmount
+    int payloadSize;
+
+}
@@ -3,25 +3,53 @@ package net.seblit.packeteer;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
 /**
  * A {@link Client} that can send and read {@link Packet}s through a {@link NetworkAdapter}.
  * For creation of {@link IncomingPacket}s a {@link PacketFactory} is used.<br>
  * <br>
  * This Client also provides support for packet acknowledgement and data validation via check sum. Note that the tracking window
  * for transmission states is limited to 32 transmissions. Producing transmissions further than 32 apart from another will
- * lead to state loss and effected transmissions will be considered failed.
+ * lead to state loss and effected transmissions will be considered failed.<br>
+ * <br>
+ * Sent and received frames, waiting for acknowledgement, skipped bytes and checksum mismatches are recorded as Java Flight
+ * Recorder events in the category "Packeteer". They cost next to nothing while not enabled in a recording.
  */
 public class Client {
 
-    private static final byte START_BYTE_LOW = 0xF;
-    private static final byte START_BYTE_HIGH = 0xA;
+    private static final int MAX_PAYLOAD_LENGTH = 0xFFFF;
+    private static final int SESSION_CONFIRMED = 0x100;
+    private static final long NO_TIMEOUT = -1;
+    private static final Packet ACK_SUCCESS = new Packet(Packet.TYPE_ACK, (byte) 1, (byte) BitUtil.createFlags());
+    private static final Packet ACK_FAILURE = new Packet(Packet.TYPE_ACK, (byte) 1, (byte) BitUtil.createFlags(1));
     private final byte protocolVersion;
     private final NetworkAdapter adapter;
     private final PacketFactory factory;
     private final int maxSendAttempts;
+    private final ProtocolPolicy policy;
+    private final FrameEncoder encoder;
+    private final FrameDecoder decoder;
+    private final byte[] headerScratch;
+    private final ByteBuffer headerScratchBuffer;
+    private final boolean sessionHeaders;
+    private final int[] sessionVersions = new int[256];
+    private final DeltaEncoder deltaEncoder = new DeltaEncoder();
+    private final DeltaDecoder deltaDecoder = new DeltaDecoder();
+    private byte[] payloadScratch;
+    private ByteBuffer payloadScratchBuffer;
+    private byte[] deltaScratch;
+    private byte[] deltaReceiveScratch;
+    private ByteBuffer deltaReceiveScratchBuffer;
     private byte messageCount = 0;
     private int pendingStates = 0;
     private int failureStates = 0;
+    private long retransmissionCount = 0;
+    private boolean isSessionConfirmed = false;
 
     /**
      * Creates a new instance of {@link Client}
@@ -32,10 +60,30 @@ public class Client {
      * @param factory         The {@link PacketFactory} used to create {@link IncomingPacket}s when receiving data
      */
     public Client(byte protocolVersion, int maxSendAttempts, @NotNull NetworkAdapter adapter, @NotNull PacketFactory factory) {
+        this(protocolVersion, maxSendAttempts, adapter, factory, ProtocolPolicy.DEFAULT);
+    }
+
+    /**
+     * Creates a new instance of {@link Client}
+     *
+     * @param protocolVersion The protocol version header sent with every {@link Packet}
+     * @param maxSendAttempts Count of attempts made to send a packet with acknowledgement
+     * @param adapter         The {@link NetworkAdapter} used to send and receive data
+     * @param factory         The {@link PacketFactory} used to create {@link IncomingPacket}s when receiving data
+     * @param policy          The {@link ProtocolPolicy} deciding how transmissions are structured per protocol version
+     */
+    public Client(byte protocolVersion, int maxSendAttempts, @NotNull NetworkAdapter adapter, @NotNull PacketFactory factory, @NotNull ProtocolPolicy policy) {
         this.protocolVersion = protocolVersion;
         this.adapter = adapter;
         this.factory = factory;
         this.maxSendAttempts = maxSendAttempts;
+        this.policy = policy;
+        this.encoder = new FrameEncoder(policy);
+        this.decoder = new FrameDecoder(policy);
+        this.headerScratch = new byte[encoder.getHeaderLength(protocolVersion)];
+        this.headerScratchBuffer = ByteBuffer.wrap(headerScratch);
+        this.sessionHeaders = policy.getHeaderFormat(protocolVersion) == HeaderFormat.COMPACT_SESSION;
+        Arrays.fill(sessionVersions, -1);
     }
 
     /**
@@ -52,25 +100,53 @@ public class Client {
         return maxSendAttempts;
     }
 
+    /**
+     * @return the {@link ProtocolPolicy} used by this client
+     */
+    public @NotNull ProtocolPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @param type The packet type
+     * @return the maximum payload length of packets of the type sent by this client, which is one byte less for types
+     * delta encoded by its {@link ProtocolPolicy}
+     */
+    public int getMaxPayloadLength(byte type) {
+        boolean deltaEncoded = type != Packet.TYPE_ACK && policy.isDeltaEncoded(protocolVersion, type);
+        // delta encoded payloads are prefixed with their mode
+        return deltaEncoded ? MAX_PAYLOAD_LENGTH - 1 : MAX_PAYLOAD_LENGTH;
+    }
+
+    /**
+     * @return the total count of transmissions that were resent by this client due to missing acknowledgement
+     */
+    public synchronized long getRetransmissionCount() {
+        return retransmissionCount;
+    }
+
     /**
      * Writes a packet to the underlying {@link NetworkAdapter}. RW operations are synchronized and this method
-     * may block when others access the same adapter. Transmissions are structured as follows<br>
+     * may block when others access the same adapter. Header and checksums are encoded into buffers owned by this client,
+     * so apart from waiting for acknowledgement sending doesn't allocate. Transmissions are structured as follows<br>
      * <br>
      * <h1>Initialization</h1>
      * Before transmission, a sequential wrap-around one byte messageId is generated to identify each message.<br>
-     * For header and payload (if provided) a 16-bit CRC-16/IBM Checksum is generated. It uses following parameters
+     * For header a 16-bit CRC-16/IBM Checksum is generated. It uses following parameters
      * <li>Initial value: 0x0</li>
      * <li>Polynomial: 0xA001</li>
      * <li>Processing order: LSB to MSB</li>
      * <li>Input reflection: Yes</li>
      * <li>Output reflection: No</li>
      * <li>Final XOR: 0x0000</li>
+     * For the payload (if provided) the {@link PayloadChecksum} of the {@link ProtocolPolicy} for this client's protocol
+     * version is used. By default this is the same CRC-16/IBM checksum ({@link PayloadChecksum#CRC16}).
      * <h1>Transmission</h1>
      * <h2>Start bits</h1>
      * Every communication begins with the two bytes 0xF and 0xA. These serve as a marker for the receiver to detect the beginning
      * of received data.
      * <h2>Header</h1>
-     * Headers are made up of the following 9 bytes
+     * Headers are made up of the following 9 bytes, or more if the payload checksum is larger than 16 bit
      * <li>Protocol version</li>
      * <li>messageId</li>
      * <li>{@link Packet#getType()}</li>
@@ -78,10 +154,12 @@ public class Client {
      * <li>{@link Packet#getFlags()}</li>
      * <li>Lower byte of 16-bit payload length</li>
      * <li>Higher byte of 16-bit payload length</li>
-     * <li>Lower byte of 16-bit payload CRC16 checksum</li>
-     * <li>Higher byte of 16-bit payload CRC16 checksum</li>
+     * <li>Bytes of the payload checksum, from low to high. 2 bytes for {@link PayloadChecksum#CRC16}</li>
      * <h2>Header checksum</h1>
      * Low, then high byte of 16-bit CRC16 header checksum derived of the above-mentioned Header data
+     * <h2>Compact headers</h1>
+     * If the {@link ProtocolPolicy} selects another {@link HeaderFormat} for this client's protocol version, start bytes,
+     * header and header checksum are structured as specified by {@link HeaderFormat#COMPACT} instead
      * <h2>Payload</h1>
      * Payloads are optional. If a payload has been provided, it will be attached to the end of communication
      * <h1>Acknowledgement & resend</h1>
@@ -103,13 +181,94 @@ public class Client {
      * @throws NetworkException       if the underlying {@link NetworkAdapter} threw any
      */
     public byte send(@NotNull Packet packet, byte @Nullable ... payload) throws NetworkException {
-        byte messageId;
-        synchronized (this) {
-            messageId = messageCount;
-            messageCount++;
-            markAckPending(messageId, true, false);
+        return send(packet, payload, 0, payload != null ? payload.length : 0);
+    }
+
+    /**
+     * Writes a packet and gives up waiting for acknowledgement once the timeout elapsed. Behaves as specified by
+     * {@link #send(Packet, byte...)}, except that the remaining time is split evenly between the remaining send attempts
+     * and each attempt waits for acknowledgement at most for its share. Waiting is done by reading with
+     * {@link NetworkAdapter#read(int, long)}. If acknowledgement wasn't received when the timeout elapsed, a
+     * {@link SendTimeoutException} is thrown even if send attempts remain.<br>
+     * Writes and waiting for the adapter lock are not bounded by the timeout.
+     *
+     * @param packet  The Packet to transmit
+     * @param timeout The maximum time to wait for acknowledgement
+     * @param unit    The unit of the timeout
+     * @param payload Optional, the payload to transmit. Pass null or empty to ignore. May not be larger than 64Kib
+     * @return the messageId that was generated for this transmission
+     * @throws SendTimeoutException   if the packet required acknowledgement but didn't receive it in time
+     * @throws PacketFailureException if the packet received acknowledgement with the failure flag set
+     * @throws NetworkException       if the underlying {@link NetworkAdapter} threw any
+     */
+    public byte send(@NotNull Packet packet, long timeout, @NotNull TimeUnit unit, byte @Nullable ... payload) throws NetworkException {
+        byte messageId = nextMessageId();
+        send(messageId, packet, payload, 0, payload != null ? payload.length : 0, null, null, null,
+                Math.max(0, unit.toNanos(timeout)));
+        return messageId;
+    }
+
+    /**
+     * Writes a packet with a slice of an array as payload. Behaves as specified by {@link #send(Packet, byte...)}.
+     * If the slice doesn't cover the entire array, it is written via {@link NetworkAdapter#write(byte[], int, int)}
+     *
+     * @param packet  The Packet to transmit
+     * @param payload The array containing the payload
+     * @param offset  The index of the first payload byte
+     * @param length  The count of payload bytes. May not be larger than 64Kib
+     * @return the messageId that was generated for this transmission
+     * @throws SendTimeoutException   if the packet required acknowledgement but didn't receive it
+     * @throws PacketFailureException if the packet received acknowledgement with the failure flag set
+     * @throws NetworkException       if the underlying {@link NetworkAdapter} threw any
+     */
+    public byte send(@NotNull Packet packet, byte @Nullable [] payload, int offset, int length) throws NetworkException {
+        byte messageId = nextMessageId();
+        send(messageId, packet, payload, offset, length, null, null, null, NO_TIMEOUT);
+        return messageId;
+    }
+
+    /**
+     * Writes a packet with the remaining bytes of a buffer as payload. Behaves as specified by {@link #send(Packet, byte...)}.
+     * The position of the buffer is not changed. Buffers without accessible array are copied into a buffer owned by
+     * this client before being written via {@link NetworkAdapter#write(byte[], int, int)}
+     *
+     * @param packet  The Packet to transmit
+     * @param payload The buffer containing the payload. May not have more than 64Kib remaining
+     * @return the messageId that was generated for this transmission
+     * @throws SendTimeoutException   if the packet required acknowledgement but didn't receive it
+     * @throws PacketFailureException if the packet received acknowledgement with the failure flag set
+     * @throws NetworkException       if the underlying {@link NetworkAdapter} threw any
+     */
+    public byte sendBuffer(@NotNull Packet packet, @NotNull ByteBuffer payload) throws NetworkException {
+        byte messageId = nextMessageId();
+        if (payload.hasArray()) {
+            send(messageId, packet, payload.array(), payload.arrayOffset() + payload.position(), payload.remaining(), null, null, null, NO_TIMEOUT);
+        } else {
+            send(messageId, packet, null, 0, payload.remaining(), payload, null, null, NO_TIMEOUT);
+        }
+        return messageId;
+    }
+
+    /**
+     * Writes a packet with a value as payload that is encoded by a {@link PacketCodec}. Behaves as specified by
+     * {@link #send(Packet, byte...)}. The value is encoded straight into a buffer owned by this client while holding
+     * the adapter lock. It is encoded again for each resend, so it must not be modified until this method returns
+     *
+     * @param packet The Packet to transmit
+     * @param codec  The {@link PacketCodec} for the type and version of the packet
+     * @param value  The value to encode. Its encoded form may not be larger than 64Kib
+     * @return the messageId that was generated for this transmission
+     * @throws SendTimeoutException     if the packet required acknowledgement but didn't receive it
+     * @throws PacketFailureException   if the packet received acknowledgement with the failure flag set
+     * @throws NetworkException         if the underlying {@link NetworkAdapter} threw any
+     * @throws IllegalArgumentException if the codec doesn't match type and version of the packet
+     */
+    public <T> byte send(@NotNull Packet packet, @NotNull PacketCodec<? super T> codec, @NotNull T value) throws NetworkException {
+        if (codec.getType() != packet.getType() || codec.getVersion() != packet.getVersion()) {
+            throw new IllegalArgumentException("Codec doesn't match type and version of the packet");
         }
-        send(messageId, packet, payload);
+        byte messageId = nextMessageId();
+        send(messageId, packet, null, 0, 0, null, codec, value, NO_TIMEOUT);
         return messageId;
     }
 
@@ -118,22 +277,32 @@ public class Client {
      * may block when others access the same adapter. Incoming data is processed as follows
      * <h1>Scanning for start bytes</h1>
      * Bytes will be read until the two byte starting sequence of 0xF 0xA is detected. Once the starting sequence is found,
-     * an attempt to read a header is made.
+     * an attempt to read a header is made. Reading is done by a {@link FrameDecoder}, so a frame that was partially read
+     * when an exception interrupted a previous call is continued.
      * <h1>Reading and validating header</h1>
-     * For the header 9 bytes are read. Then for the 16-bit header checksum, first the low and then the high byte are read.
-     * Next The checksum for the 9 header bytes is generated and compared with the received checksum.<br>
-     * If the checksums don't match the data is disposed and the process returns to scanning for the start bytes.
+     * First the protocol version is read and the {@link PayloadChecksum} for it is looked up in the {@link ProtocolPolicy}.
+     * Then the remainder of the header is read, which is 8 bytes for {@link PayloadChecksum#CRC16}. Then for the 16-bit
+     * header checksum, first the low and then the high byte are read.
+     * Next The checksum for the header bytes is generated and compared with the received checksum.<br>
+     * If the checksums don't match the data is disposed and the process returns to scanning for the start bytes.<br>
+     * If the start bytes are 0xF 0xB instead, a header as specified by {@link HeaderFormat#COMPACT} is read and
+     * validated. Omitted values are taken from previously received headers.
      * <h1>Reading and validating payload</h1>
      * Optional, only applied if payload length that was received in the header is > 0.
      * The payload bytes are read, based off the payload length. Then the checksum for all payload bytes
-     * is generated and compared with the payload checksum received in the header.<br>
+     * is generated with the {@link PayloadChecksum} of the received protocol version and compared with the payload
+     * checksum received in the header.<br>
      * If the checksums don't match the data is disposed and this method returns. In this case a packet was detected
      * successfully but couldn't be processed due to data corruption.
      * <h1>Packet processing</h1>
      * The underlying {@link PacketFactory} is called to create the corresponding {@link IncomingPacket} for the received
      * packet information. Then {@link IncomingPacket#process(byte...)} is called to process it. Note that the payload may be null
      * or empty here if none was received.<br>
-     * If the factory fails to create the packet or the packet couldn't be processed a {@link ProcessingException} is thrown.
+     * If the factory creates a {@link DecodedPacket}, its payload is decoded straight from the receive buffer instead
+     * and {@link DecodedPacket#process(Object)} is called with the decoded value. Packet creation and decoding happen
+     * while holding the adapter lock, processing happens after releasing it.<br>
+     * If the factory fails to create the packet or the packet couldn't be decoded or processed a {@link ProcessingException}
+     * is thrown. Runtime exceptions thrown by a {@link PacketCodec} while decoding are wrapped in it.
      * <h1>Acknowledgements</h1>
      * <h2>Incoming</h2>
      * If a packet of type {@link Packet#TYPE_ACK} is received, the previous processing step is skipped. Instead this method will
@@ -152,117 +321,393 @@ public class Client {
      * @throws ProcessingException if any occur during packet creation in the factory or processing in the packet implementation
      */
     public void receive() throws NetworkException, ProcessingException {
-        byte[] header = null;
-        byte[] payload;
-        synchronized (adapter) {
-            while (header == null) {
-                if (adapter.read(1)[0] != START_BYTE_LOW || adapter.read(1)[0] != START_BYTE_HIGH) {
-                    continue; // wait for start bytes
-                }
-                header = adapter.read(9);
-                byte[] receivedHeaderChecksum = adapter.read(2);
-                int actualHeaderChecksum = createChecksum(header);
-                if (BitUtil.intFrom16Bit(receivedHeaderChecksum[0], receivedHeaderChecksum[1]) != actualHeaderChecksum) {
-                    header = null; // header invalid, clear and scan for next
+        receive(NO_TIMEOUT);
+    }
+
+    /**
+     * Reads the next packet and processes it as specified by {@link #receive()}, but gives up once the timeout elapsed
+     * without a complete packet being read. Reading is done by {@link NetworkAdapter#read(int, long)}. A partially
+     * read packet is continued by the next call. Once the timeout elapsed, reading only continues to complete a packet
+     * whose start was already read and whose remaining bytes are available, so a continuous stream of invalid data
+     * can't exceed the timeout. A timeout of 0 therefore only processes a packet whose bytes are already available.<br>
+     * Waiting for the adapter lock, processing and sending acknowledgement are not bounded by the timeout.
+     *
+     * @param timeout The maximum time to wait for a packet
+     * @param unit    The unit of the timeout
+     * @throws ReceiveTimeoutException if no packet was read before the timeout elapsed
+     * @throws NetworkException        if any occur while reading from the underlying {@link NetworkAdapter}
+     * @throws ProcessingException     if any occur during packet creation in the factory or processing in the packet implementation
+     */
+    public void receive(long timeout, @NotNull TimeUnit unit) throws NetworkException, ProcessingException {
+        receive(Math.max(0, unit.toNanos(timeout)));
+    }
+
+    /**
+     * @param timeoutNanos The maximum time to wait for a packet or {@link #NO_TIMEOUT} to wait until one was read
+     */
+    private void receive(long timeoutNanos) throws NetworkException, ProcessingException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        byte messageId = 0;
+        boolean requiresAck = false;
+        boolean success = false;
+        boolean isFrameRead = false;
+        FrameReceiveEvent receiveEvent = EventUtil.isEnabled(FrameReceiveEvent.class) ? new FrameReceiveEvent() : null;
+        long lockRequested = 0;
+        if (receiveEvent != null) {
+            receiveEvent.begin();
+            lockRequested = System.nanoTime();
+        }
+        try {
+            IncomingPacket packet;
+            byte[] payload = null;
+            synchronized (adapter) {
+                if (receiveEvent != null) {
+                    receiveEvent.lockWait = System.nanoTime() - lockRequested;
                 }
-            }
-            if (header[2] == Packet.TYPE_ACK) {
-                markAckPending(header[1], false, BitUtil.isFlagSet(header[4], 1));
-                return;
-            } else {
-                int payloadSize = BitUtil.intFrom16Bit(header[5], header[6]);
-                payload = payloadSize > 0 ? adapter.read(payloadSize) : null;
-                int receivedPayloadChecksum = BitUtil.intFrom16Bit(header[7], header[8]);
-                int actualPayloadChecksum = createChecksum(payload);
-                if (receivedPayloadChecksum != actualPayloadChecksum) {
+                FrameDecoder.Result result = null;
+                boolean isFrameProgressing = true;
+                do {
+                    // header corruption is skipped by continuing to scan for start bytes
+                    if (timeoutNanos == NO_TIMEOUT) {
+                        result = decoder.decode(ByteBuffer.wrap(adapter.read(decoder.getRequiredBytes())));
+                    } else {
+                        // past the deadline, only a frame whose start was found is completed while its bytes are available
+                        if (result != null && deadline - System.nanoTime() <= 0 && (!isFrameProgressing || !decoder.isDecodingFrame())) {
+                            throw new ReceiveTimeoutException("No packet received before timeout elapsed");
+                        }
+                        int requiredBytes = decoder.getRequiredBytes();
+                        int skippedBytes = decoder.getSkippedBytes();
+                        byte[] data = adapter.read(requiredBytes, Math.max(0, deadline - System.nanoTime()));
+                        result = decoder.decode(ByteBuffer.wrap(data));
+                        isFrameProgressing = data.length == requiredBytes && decoder.getSkippedBytes() <= skippedBytes;
+                    }
+                    if (result != FrameDecoder.Result.INCOMPLETE) {
+                        recordDecodeEvents(result);
+                    }
+                } while (result == FrameDecoder.Result.INCOMPLETE || result == FrameDecoder.Result.HEADER_CORRUPT);
+                if (result == FrameDecoder.Result.PAYLOAD_CORRUPT) {
                     // payload invalid, stop processing packet
                     return;
                 }
+                isFrameRead = true;
+                messageId = decoder.getMessageId();
+                if (receiveEvent != null) {
+                    receiveEvent.messageId = messageId;
+                    receiveEvent.type = decoder.getType();
+                    receiveEvent.payloadSize = decoder.getPayloadLength();
+                }
+                byte packetFlags = decoder.getFlags();
+                if (decoder.getType() == Packet.TYPE_ACK) {
+                    markAckPending(messageId, false, BitUtil.isFlagSet(packetFlags, 1));
+                    return;
+                }
+                requiresAck = BitUtil.isFlagSet(packetFlags, 0); // ack required check - flags index 0 is set to 1
+                ByteBuffer receivedPayload = decoder.getPayload();
+                if (policy.isDeltaEncoded(decoder.getProtocolVersion(), decoder.getType())) {
+                    receivedPayload = decodeDelta(decoder.getType(), messageId, requiresAck, receivedPayload);
+                }
+                packet = factory.create(decoder.getProtocolVersion(), decoder.getType(), decoder.getVersion(), packetFlags);
+                if (packet instanceof DecodedPacket<?> decodedPacket) {
+                    decodedPacket.decode(receivedPayload);
+                } else if (receivedPayload.hasRemaining()) {
+                    payload = new byte[receivedPayload.remaining()];
+                    receivedPayload.get(payload);
+                }
+            }
+            if (packet instanceof DecodedPacket<?> decodedPacket) {
+                decodedPacket.processDecoded();
+            } else {
+                packet.process(payload);
             }
-        }
-        boolean success = false;
-        try {
-            IncomingPacket packet = factory.create(header[0], header[2], header[3], header[4]);
-            packet.process(payload);
             success = true;
         } finally {
-            if (BitUtil.isFlagSet(header[4], 0)) { // ack required check - flags index 0 is set to 1
-                byte flags = (byte) (success ? BitUtil.createFlags() : BitUtil.createFlags(1));
-                send(header[2], new Packet(Packet.TYPE_ACK, (byte) 1, flags));
+            try {
+                if (requiresAck) {
+                    send(messageId, success ? ACK_SUCCESS : ACK_FAILURE, null, 0, 0, null, null, null, NO_TIMEOUT);
+                }
+            } finally {
+                if (receiveEvent != null && isFrameRead) {
+                    receiveEvent.processed = success;
+                    receiveEvent.commit();
+                }
             }
         }
+    }
+
+    private void recordDecodeEvents(FrameDecoder.Result result) {
+        if (decoder.getSkippedBytes() > 0) {
+            ResyncEvent resyncEvent = new ResyncEvent();
+            if (resyncEvent.shouldCommit()) {
+                resyncEvent.skippedBytes = decoder.getSkippedBytes();
+                resyncEvent.commit();
+            }
+        }
+        if (result == FrameDecoder.Result.HEADER_CORRUPT || result == FrameDecoder.Result.PAYLOAD_CORRUPT) {
+            ChecksumRejectEvent rejectEvent = new ChecksumRejectEvent();
+            if (rejectEvent.shouldCommit()) {
+                rejectEvent.header = result == FrameDecoder.Result.HEADER_CORRUPT;
+                if (!rejectEvent.header) {
+                    rejectEvent.messageId = decoder.getMessageId();
+                    rejectEvent.type = decoder.getType();
+                    rejectEvent.payloadSize = decoder.getPayloadLength();
+                }
+                rejectEvent.commit();
+            }
+        }
+    }
 
+    private ByteBuffer decodeDelta(byte type, byte messageId, boolean updateBase, ByteBuffer encodedPayload) throws ProcessingException {
+        if (deltaReceiveScratch == null) {
+            deltaReceiveScratch = new byte[MAX_PAYLOAD_LENGTH];
+            deltaReceiveScratchBuffer = ByteBuffer.wrap(deltaReceiveScratch).asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+        }
+        int length = deltaDecoder.decode(type, messageId, updateBase, encodedPayload, deltaReceiveScratch);
+        return deltaReceiveScratchBuffer.clear().limit(length);
     }
 
     static int createChecksum(byte... data) {
+        return createChecksum(data, 0, data != null ? data.length : 0);
+    }
+
+    static int createChecksum(byte[] data, int offset, int length) {
         int crc = 0x0000;
         if (data != null) {
-            int polynomial = 0xA001;
-            for (byte b : data) {
-                crc ^= (b & 0xFF);
-                for (int i = 0; i < 8; i++) {
-                    if ((crc & 0x0001) != 0) {
-                        crc = (crc >>> 1) ^ polynomial;
-                    } else {
-                        crc >>>= 1;
-                    }
-                }
+            for (int index = offset; index < offset + length; index++) {
+                crc = updateChecksum(crc, data[index]);
+            }
+        }
+        return crc;
+    }
+
+    static int updateChecksum(int crc, byte value) {
+        int polynomial = 0xA001;
+        crc ^= (value & 0xFF);
+        for (int i = 0; i < 8; i++) {
+            if ((crc & 0x0001) != 0) {
+                crc = (crc >>> 1) ^ polynomial;
+            } else {
+                crc >>>= 1;
             }
         }
         return crc & 0xFFFF;
     }
 
-    private void send(byte messageId, Packet packet, byte... payload) throws NetworkException {
-        int payloadChecksum = createChecksum(payload);
-        int payloadLength = payload != null ? payload.length : 0;
-        byte[] header = {
-                protocolVersion,
-                messageId,
-                packet.getType(),
-                packet.getVersion(),
-                packet.getFlags(),
-                BitUtil.getByteAt(payloadLength, 0),
-                BitUtil.getByteAt(payloadLength, 1),
-                BitUtil.getByteAt(payloadChecksum, 0),
-                BitUtil.getByteAt(payloadChecksum, 1)
-        };
-        int headerChecksum = createChecksum(header);
+    private synchronized byte nextMessageId() {
+        byte messageId = messageCount;
+        messageCount++;
+        markAckPending(messageId, true, false);
+        return messageId;
+    }
+
+    /**
+     * Payloads are provided as array slice, as bufferPayload if they have no accessible array or as value to be encoded
+     * by codec. The latter two are written into the payload scratch buffer while holding the adapter lock. Payloads of
+     * delta encoded types are then encoded into the delta scratch buffer. Unless timeoutNanos is {@link #NO_TIMEOUT},
+     * waiting for acknowledgement ends at the deadline
+     */
+    private <T> void send(byte messageId, Packet packet, byte[] payload, int offset, int payloadLength,
+                          ByteBuffer bufferPayload, PacketCodec<? super T> codec, T value, long timeoutNanos) throws NetworkException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        boolean deltaEncoded = packet.getType() != Packet.TYPE_ACK && policy.isDeltaEncoded(protocolVersion, packet.getType());
+        int maxPayloadLength = getMaxPayloadLength(packet.getType());
+        if (payloadLength > maxPayloadLength) {
+            throw new IllegalArgumentException("Payload may not be larger than " + maxPayloadLength + " bytes");
+        }
+        PayloadChecksum checksum = policy.getPayloadChecksum(protocolVersion);
+        int payloadChecksum = 0;
+        if (!deltaEncoded) {
+            payloadChecksum = bufferPayload != null ? checksum.compute(bufferPayload) : checksum.compute(payload, offset, payloadLength);
+        }
         boolean requiresAck = packet.isFlagSet(0);
         boolean isSendCompleted = !requiresAck;
+        boolean isAcknowledged = false;
         int sendAttempts = 0;
-        do {
-            synchronized (adapter) {
-                adapter.write(START_BYTE_LOW, START_BYTE_HIGH);
-                adapter.write(header);
-                adapter.write(BitUtil.getByteAt(headerChecksum, 0), BitUtil.getByteAt(headerChecksum, 1));
-                if (payloadLength > 0) {
-                    adapter.write(payload);
+        try {
+            do {
+                if (sendAttempts > 0) {
+                    countRetransmission();
                 }
-                sendAttempts++;
-            }
-            if (requiresAck) {
-
-                while (isAckPending(messageId)) {
-                    try {
-                        synchronized (adapter) {
-                            if (!isAckPending(messageId)) {
-                                break;
+                // events are only created while recorded, so sending doesn't allocate otherwise
+                FrameSendEvent sendEvent = EventUtil.isEnabled(FrameSendEvent.class) ? new FrameSendEvent() : null;
+                long lockRequested = 0;
+                if (sendEvent != null) {
+                    sendEvent.begin();
+                    lockRequested = System.nanoTime();
+                }
+                synchronized (adapter) {
+                    if (sendEvent != null) {
+                        sendEvent.lockWait = System.nanoTime() - lockRequested;
+                    }
+                    byte[] frame = payload;
+                    int frameOffset = offset;
+                    if (codec != null) {
+                        payloadLength = encodePayload(codec, value, maxPayloadLength);
+                        frame = payloadScratch;
+                        frameOffset = 0;
+                    } else if (bufferPayload != null) {
+                        preparePayloadScratch().put(0, bufferPayload, bufferPayload.position(), payloadLength);
+                        frame = payloadScratch;
+                        frameOffset = 0;
+                    }
+                    int frameLength = payloadLength;
+                    if (deltaEncoded) {
+                        frameLength = deltaEncoder.encode(packet.getType(), messageId, requiresAck, frame, frameOffset,
+                                payloadLength, prepareDeltaScratch());
+                        frame = deltaScratch;
+                        frameOffset = 0;
+                        payloadChecksum = checksum.compute(deltaScratch, 0, frameLength);
+                    } else if (codec != null) {
+                        payloadChecksum = checksum.compute(payloadScratch, 0, payloadLength);
+                    }
+                    // retransmissions include all values in case the receiver lost its session, for instance by restarting
+                    boolean omitValues = sessionHeaders && sendAttempts == 0;
+                    boolean omitProtocolVersion = omitValues && isSessionEstablished();
+                    boolean omitVersion = omitValues && isSessionEstablished(packet.getType(), packet.getVersion());
+                    headerScratchBuffer.clear();
+                    int headerLength = encoder.encodeHeader(headerScratchBuffer, protocolVersion, messageId, packet.getType(),
+                            packet.getVersion(), packet.getFlags(), frameLength, payloadChecksum, omitProtocolVersion, omitVersion);
+                    if (headerLength == headerScratch.length) {
+                        adapter.write(headerScratch);
+                    } else {
+                        adapter.write(headerScratch, 0, headerLength);
+                    }
+                    if (frameLength > 0 && frameOffset == 0 && frameLength == frame.length) {
+                        adapter.write(frame);
+                    } else if (frameLength > 0) {
+                        adapter.write(frame, frameOffset, frameLength);
+                    }
+                    sendAttempts++;
+                    if (sendEvent != null) {
+                        sendEvent.payloadSize = frameLength;
+                    }
+                }
+                if (sendEvent != null) {
+                    sendEvent.messageId = messageId;
+                    sendEvent.type = packet.getType();
+                    sendEvent.attempt = sendAttempts;
+                    sendEvent.commit();
+                }
+                if (requiresAck) {
+                    // each remaining attempt gets an equal share of the remaining time
+                    long now = System.nanoTime();
+                    long attemptDeadline = now + (deadline - now) / (maxSendAttempts - sendAttempts + 1);
+                    AckWaitEvent ackWaitEvent = EventUtil.isEnabled(AckWaitEvent.class) ? new AckWaitEvent() : null;
+                    if (ackWaitEvent != null) {
+                        ackWaitEvent.begin();
+                    }
+                    while (isAckPending(messageId)) {
+                        try {
+                            synchronized (adapter) {
+                                if (!isAckPending(messageId)) {
+                                    break;
+                                }
+                                receive(timeoutNanos == NO_TIMEOUT ? NO_TIMEOUT : Math.max(0, attemptDeadline - System.nanoTime()));
                             }
-                            receive();
+                        } catch (NetworkException | ProcessingException error) {
+                            // failed to receive ack, go to resend
+                            break;
                         }
-                    } catch (NetworkException | ProcessingException error) {
-                        // failed to receive ack, go to resend
-                        break;
+                    }
+                    isSendCompleted = !isAckPending(messageId);
+                    if (ackWaitEvent != null) {
+                        ackWaitEvent.messageId = messageId;
+                        ackWaitEvent.type = packet.getType();
+                        ackWaitEvent.attempt = sendAttempts;
+                        ackWaitEvent.acknowledged = isSendCompleted;
+                        ackWaitEvent.commit();
                     }
                 }
-                isSendCompleted = !isAckPending(messageId);
+            } while (!isSendCompleted && sendAttempts < maxSendAttempts
+                    && (timeoutNanos == NO_TIMEOUT || deadline - System.nanoTime() > 0));
+            if (!isSendCompleted && sendAttempts < maxSendAttempts) {
+                throw new SendTimeoutException("Failed to receive ack before timeout elapsed");
+            } else if (!isSendCompleted) {
+                throw new SendTimeoutException("Failed to receive ack after max send attempts reached");
+            } else if (requiresAck && isAckFailed(messageId)) {
+                throw new PacketFailureException("Recipient couldn't process packet");
             }
-        } while (!isSendCompleted && sendAttempts < maxSendAttempts);
-        if (!isSendCompleted) {
-            throw new SendTimeoutException("Failed to receive ack after max send attempts reached");
-        } else if (requiresAck && isAckFailed(messageId)) {
-            throw new PacketFailureException("Recipient couldn't process packet");
+            isAcknowledged = requiresAck;
+        } finally {
+            if (sessionHeaders && requiresAck && isSendCompleted && sendAttempts > 1) {
+                renewSession(packet.getType(), packet.getVersion());
+            } else if (sessionHeaders && requiresAck && isSendCompleted) {
+                confirmSession(packet.getType(), packet.getVersion());
+            } else if (sessionHeaders && requiresAck) {
+                resetSession();
+            }
+            if (deltaEncoded && isAcknowledged) {
+                deltaEncoder.acknowledged(packet.getType(), messageId);
+            } else if (deltaEncoded && requiresAck) {
+                deltaEncoder.failed(packet.getType());
+            }
+        }
+    }
+
+    private ByteBuffer preparePayloadScratch() {
+        if (payloadScratch == null) {
+            payloadScratch = new byte[MAX_PAYLOAD_LENGTH];
+            payloadScratchBuffer = ByteBuffer.wrap(payloadScratch).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return payloadScratchBuffer.clear();
+    }
+
+    private byte[] prepareDeltaScratch() {
+        if (deltaScratch == null) {
+            deltaScratch = new byte[MAX_PAYLOAD_LENGTH];
+        }
+        return deltaScratch;
+    }
+
+    private <T> int encodePayload(PacketCodec<? super T> codec, T value, int maxPayloadLength) {
+        ByteBuffer target = preparePayloadScratch().limit(maxPayloadLength);
+        try {
+            codec.encode(value, target);
+        } catch (BufferOverflowException error) {
+            throw new IllegalArgumentException("Encoded payload may not be larger than " + maxPayloadLength + " bytes", error);
         }
+        return target.position();
+    }
+
+    private synchronized boolean isSessionEstablished() {
+        return isSessionConfirmed;
+    }
+
+    /**
+     * Records the version as sent if it isn't established yet
+     */
+    private synchronized boolean isSessionEstablished(byte type, byte version) {
+        int state = sessionVersions[type & 0xFF];
+        if (state == (SESSION_CONFIRMED | (version & 0xFF))) {
+            return true;
+        } else if (state != (version & 0xFF)) {
+            sessionVersions[type & 0xFF] = version & 0xFF;
+        }
+        return false;
+    }
+
+    private synchronized void confirmSession(byte type, byte version) {
+        isSessionConfirmed = true;
+        if (sessionVersions[type & 0xFF] == (version & 0xFF)) {
+            sessionVersions[type & 0xFF] |= SESSION_CONFIRMED;
+        }
+    }
+
+    /**
+     * Only keeps the values of an acknowledged retransmission, as the receiver may have lost the others by restarting
+     */
+    private synchronized void renewSession(byte type, byte version) {
+        resetSession();
+        isSessionConfirmed = true;
+        sessionVersions[type & 0xFF] = SESSION_CONFIRMED | (version & 0xFF);
+    }
+
+        private synchronized void resetSession() {
+        isSessionConfirmed = false;
+        Arrays.fill(sessionVersions, -1);
+    }
+
+    private synchronized void countRetransmission() {
+        retransmissionCount++;
     }
 
     private synchronized void markAckPending(byte messageId, boolean pending, boolean failed) {
@@ -0,0 +1,35 @@
+package net.seblit.packeteer;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * @see PayloadChecksum#CRC16
+ */
+final class Crc16Checksum implements PayloadChecksum {
+
+    @Override
+    public int getSize() {
+        return 2;
+    }
+
+    @Override
+    public int compute(byte @Nullable [] data, int offset, int length) {
+        return Client.createChecksum(data, offset, length);
+    }
+
+    @Override
+    public int compute(@NotNull ByteBuffer data) {
+        if (data.hasArray()) {
+            return compute(data.array(), data.arrayOffset() + data.position(), data.remaining());
+        }
+        int crc = 0;
+        for (int index = data.position(); index < data.limit(); index++) {
+            crc = Client.updateChecksum(crc, data.get(index));
+        }
+        return crc;
+    }
+
+}
@@ -0,0 +1,45 @@
+package net.seblit.packeteer;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32C;
+
+/**
+ * @see PayloadChecksum#CRC32C
+ */
+final class Crc32cChecksum implements PayloadChecksum {
+
+    private static final ThreadLocal<CRC32C> CRC = ThreadLocal.withInitial(CRC32C::new);
+
+    @Override
+    public int getSize() {
+        return 4;
+    }
+
+    @Override
+    public int compute(byte @Nullable [] data, int offset, int length) {
+        if (data == null || length == 0) {
+            return 0;
+        }
+        CRC32C crc = CRC.get();
+        crc.reset();
+        crc.update(data, offset, length);
+        return (int) crc.getValue();
+    }
+
+    @Override
+    public int compute(@NotNull ByteBuffer data) {
+        if (!data.hasRemaining()) {
+            return 0;
+        }
+        CRC32C crc = CRC.get();
+        crc.reset();
+        int position = data.position();
+        crc.update(data);
+        data.position(position);
+        return (int) crc.getValue();
+    }
+
+}
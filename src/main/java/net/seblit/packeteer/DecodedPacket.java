@@ -0,0 +1,77 @@
+package net.seblit.packeteer;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * An {@link IncomingPacket} whose payload is decoded by a {@link PacketCodec}. When created by the {@link PacketFactory}
+ * of a {@link Client}, the payload is decoded straight from the receive buffer of the client without copying.
+ * Implementations must override {@link #process(Object)}. Since the decoded value is held by the packet until processing,
+ * factories must create a new instance for every received packet.<br>
+ * A {@link PacketCodecRegistry} creates them with the codec registered for the received type and version, see
+ * {@link PacketCodecRegistry#register(PacketCodec, DecodedPacketFactory)}.
+ *
+ * @param <T> The type of the decoded payload
+ */
+public abstract class DecodedPacket<T> extends IncomingPacket {
+
+    private static final byte[] EMPTY_PAYLOAD = new byte[0];
+    private final PacketCodec<T> codec;
+    private T value;
+
+    /**
+     * Creates a new instance with the type and version of the codec
+     *
+     * @param codec The {@link PacketCodec} used to decode the payload
+     * @param flags The flags of the packet
+     */
+    public DecodedPacket(@NotNull PacketCodec<T> codec, byte flags) {
+        super(codec.getType(), codec.getVersion(), flags);
+        this.codec = codec;
+    }
+
+    /**
+     * @return the {@link PacketCodec} used to decode the payload
+     */
+    public @NotNull PacketCodec<T> getCodec() {
+        return codec;
+    }
+
+    /**
+     * Called when this packet was received successfully and its payload was decoded
+     *
+     * @param value The decoded payload
+     * @throws ProcessingException if any error occur during processing
+     */
+    public abstract void process(@NotNull T value) throws ProcessingException;
+
+    /**
+     * Decodes the payload with the codec of this packet and calls {@link #process(Object)}
+     *
+     * @param payload The received payload for this packet. May be empty or null if none was received
+     * @throws ProcessingException if the payload couldn't be decoded or any error occur during processing
+     */
+    @Override
+    public final void process(byte @Nullable ... payload) throws ProcessingException {
+        decode(ByteBuffer.wrap(payload != null ? payload : EMPTY_PAYLOAD).order(ByteOrder.LITTLE_ENDIAN));
+        processDecoded();
+    }
+
+    void decode(ByteBuffer payload) throws ProcessingException {
+        try {
+            value = codec.decode(payload);
+        } catch (RuntimeException error) {
+            throw new ProcessingException("Failed to decode payload of packet type " + getType(), error);
+        }
+    }
+
+    void processDecoded() throws ProcessingException {
+        T decoded = value;
+        value = null;
+        process(decoded);
+    }
+
+}
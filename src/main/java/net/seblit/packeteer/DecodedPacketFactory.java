@@ -0,0 +1,23 @@
+package net.seblit.packeteer;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Used by a {@link PacketCodecRegistry} to create {@link DecodedPacket}s for the codec they were registered with
+ *
+ * @param <T> The type of values serialized by the codec
+ */
+@FunctionalInterface
+public interface DecodedPacketFactory<T> {
+
+    /**
+     * Creates a new {@link DecodedPacket} for every received packet
+     *
+     * @param codec The {@link PacketCodec} registered for the type and version of the received packet
+     * @param flags The flags of the packet
+     * @throws ProcessingException if for any reason the packet couldn't be created
+     */
+    @NotNull
+    DecodedPacket<T> create(@NotNull PacketCodec<T> codec, byte flags) throws ProcessingException;
+
+}
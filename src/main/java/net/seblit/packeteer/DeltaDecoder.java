@@ -0,0 +1,132 @@
+package net.seblit.packeteer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static net.seblit.packeteer.DeltaEncoder.*;
+
+/**
+ * Reconstructs payloads encoded by {@link DeltaEncoder}. As only acknowledged payloads become bases for the sender,
+ * only payloads of transmissions requiring acknowledgement become bases here. The last two of each type are kept, so
+ * a retransmission encoded against the previous base can still be decoded when its first transmission was received
+ * but its acknowledgement was lost. Bases are identified by the messageId of their transmission and every reconstructed
+ * payload is verified against the checksum carried by its delta.<br>
+ * Instances are not thread safe.
+ */
+final class DeltaDecoder {
+
+    private final byte[][] currentBases = new byte[256][];
+    private final int[] currentLengths = new int[256];
+    private final int[] currentMessageIds = new int[256];
+    private final byte[][] previousBases = new byte[256][];
+    private final int[] previousLengths = new int[256];
+    private final int[] previousMessageIds = new int[256];
+
+    /**
+     * Reconstructs a payload and optionally makes it the current base of its type
+     *
+     * @param type       The packet type
+     * @param messageId  The messageId of the transmission
+     * @param updateBase Whether the payload becomes the current base, which is the case if its transmission requires
+     *                   acknowledgement
+     * @param source     The encoded payload. Consumed entirely
+     * @param target     The array to write the reconstructed payload to. Must fit 64Kib
+     * @return the length of the reconstructed payload
+     * @throws ProcessingException if the encoding is invalid, its base is unknown or ambiguous or the reconstructed
+     *                             payload doesn't match its checksum
+     */
+    int decode(byte type, byte messageId, boolean updateBase, ByteBuffer source, byte[] target) throws ProcessingException {
+        if (!source.hasRemaining()) {
+            throw new ProcessingException("Delta encoded payload is missing its mode");
+        }
+        int index = type & 0xFF;
+        byte mode = source.get();
+        int length;
+        if (mode == MODE_FULL) {
+            length = source.remaining();
+            source.get(target, 0, length);
+        } else if (mode == MODE_DELTA) {
+            length = decodeDelta(index, source, target);
+        } else {
+            throw new ProcessingException("Unknown delta mode " + mode);
+        }
+        if (updateBase) {
+            updateBase(index, messageId & 0xFF, target, length);
+        }
+        return length;
+    }
+
+    private int decodeDelta(int index, ByteBuffer source, byte[] target) throws ProcessingException {
+        if (source.remaining() < DELTA_HEADER_SIZE - 1) {
+            throw new ProcessingException("Delta header incomplete");
+        }
+        int baseMessageId = source.get() & 0xFF;
+        int length = BitUtil.intFrom16Bit(source.get(), source.get());
+        int payloadChecksum = BitUtil.intFrom16Bit(source.get(), source.get());
+        boolean isCurrentBase = currentBases[index] != null && currentMessageIds[index] == baseMessageId;
+        boolean isPreviousBase = previousBases[index] != null && previousMessageIds[index] == baseMessageId;
+        if (isCurrentBase && isPreviousBase) {
+            // messageIds wrapped around between both bases
+            throw new ProcessingException("Ambiguous delta base");
+        } else if (!isCurrentBase && !isPreviousBase) {
+            throw new ProcessingException("Unknown delta base");
+        }
+        byte[] base = isCurrentBase ? currentBases[index] : previousBases[index];
+        int baseLength = isCurrentBase ? currentLengths[index] : previousLengths[index];
+        for (int i = 0; i < length; i++) {
+            target[i] = i < baseLength ? base[i] : 0;
+        }
+        int position = 0;
+        while (source.hasRemaining()) {
+            int unchangedCount = getVarInt(source);
+            int changedCount = getVarInt(source);
+            if (unchangedCount < 0 || changedCount < 0 || (long) position + unchangedCount + changedCount > length
+                    || changedCount > source.remaining()) {
+                throw new ProcessingException("Delta run exceeds payload");
+            }
+            position += unchangedCount;
+            for (int i = 0; i < changedCount; i++) {
+                target[position++] ^= source.get();
+            }
+        }
+        if (Client.createChecksum(target, 0, length) != payloadChecksum) {
+            throw new ProcessingException("Reconstructed payload doesn't match its checksum");
+        }
+        return length;
+    }
+
+    private void updateBase(int index, int messageId, byte[] payload, int length) {
+        byte[] current = currentBases[index];
+        if (current != null && currentMessageIds[index] == messageId && currentLengths[index] == length
+                && Arrays.equals(current, 0, length, payload, 0, length)) {
+            return; // retransmission, keep the previous base for further retransmissions
+        }
+        byte[] previous = previousBases[index];
+        previousBases[index] = currentBases[index];
+        previousLengths[index] = currentLengths[index];
+        previousMessageIds[index] = currentMessageIds[index];
+        if (previous == null || previous.length < length) {
+            previous = new byte[Math.max(length, 16)];
+        }
+        System.arraycopy(payload, 0, previous, 0, length);
+        currentBases[index] = previous;
+        currentLengths[index] = length;
+        currentMessageIds[index] = messageId;
+    }
+
+    private static int getVarInt(ByteBuffer source) throws ProcessingException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (!source.hasRemaining()) {
+                throw new ProcessingException("Delta run incomplete");
+            }
+            byte next = source.get();
+            value |= (next & 0x7F) << shift;
+            if ((next & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new ProcessingException("Delta run length too long");
+    }
+
+}
@@ -0,0 +1,159 @@
+package net.seblit.packeteer;
+
+import java.util.Arrays;
+
+/**
+ * Encodes payloads of packet types that are delta encoded by the {@link ProtocolPolicy}. Each payload is prefixed with
+ * a mode byte
+ * <li>{@link #MODE_FULL}: The payload follows unchanged</li>
+ * <li>{@link #MODE_DELTA}: The messageId of the acknowledged transmission whose payload is the base, low, then high byte
+ * of the 16-bit payload length, low, then high byte of the CRC-16/IBM checksum of the payload and runs of the payload
+ * XOR the base. Each run consists of a
+ * {@link BitUtil#putVarInt variable length} count of unchanged bytes, a variable length count of changed bytes and
+ * the changed bytes XOR the base. Bytes following the last run are unchanged. The checksum allows the receiver to
+ * verify the reconstructed payload, as the frame checksum only covers the encoded delta</li>
+ * The base of a type is the last payload of that type that was acknowledged successfully. Bases are discarded when a
+ * transmission of their type failed, so following payloads are sent in full until a new base was acknowledged.<br>
+ * Instances are thread safe.
+ *
+ * @see DeltaDecoder
+ */
+final class DeltaEncoder {
+
+    static final byte MODE_FULL = 0;
+    static final byte MODE_DELTA = 1;
+    static final int DELTA_HEADER_SIZE = 6;
+    // runs of fewer unchanged bytes are merged into the changed bytes, as they would cost as much as they save
+    private static final int MIN_UNCHANGED_RUN = 3;
+    private final byte[][] bases = new byte[256][];
+    private final int[] baseLengths = new int[256];
+    private final int[] baseMessageIds = new int[256];
+    private final byte[][] candidates = new byte[256][];
+    private final int[] candidateLengths = new int[256];
+    private final int[] candidateMessageIds = new int[256];
+
+    DeltaEncoder() {
+        Arrays.fill(baseLengths, -1);
+        Arrays.fill(candidateMessageIds, -1);
+    }
+
+    /**
+     * Encodes a payload against the base of its type, or in full if there is no base or the delta wouldn't be smaller
+     *
+     * @param type        The packet type
+     * @param messageId   The messageId of the transmission
+     * @param requiresAck Whether the transmission requires acknowledgement. Only those can become the base of their type
+     * @param payload     The array containing the payload. May be null if length is 0
+     * @param offset      The index of the first payload byte
+     * @param length      The count of payload bytes. Must be smaller than target
+     * @param target      The array to write the encoded payload to
+     * @return the count of bytes written to target
+     */
+    synchronized int encode(byte type, byte messageId, boolean requiresAck, byte[] payload, int offset, int length, byte[] target) {
+        int index = type & 0xFF;
+        if (requiresAck) {
+            if (candidates[index] == null || candidates[index].length < length) {
+                candidates[index] = new byte[Math.max(length, 16)];
+            }
+            if (length > 0) {
+                System.arraycopy(payload, offset, candidates[index], 0, length);
+            }
+            candidateLengths[index] = length;
+            candidateMessageIds[index] = messageId & 0xFF;
+        }
+        if (baseLengths[index] >= 0) {
+            int encodedLength = encodeDelta(index, payload, offset, length, target);
+            if (encodedLength >= 0) {
+                return encodedLength;
+            }
+        }
+        target[0] = MODE_FULL;
+        if (length > 0) {
+            System.arraycopy(payload, offset, target, 1, length);
+        }
+        return length + 1;
+    }
+
+    /**
+     * Makes the payload of an acknowledged transmission the base of its type, unless a newer payload of the same type
+     * was encoded since
+     */
+    synchronized void acknowledged(byte type, byte messageId) {
+        int index = type & 0xFF;
+        if (candidateMessageIds[index] != (messageId & 0xFF)) {
+            return;
+        }
+        byte[] base = bases[index];
+        bases[index] = candidates[index];
+        baseLengths[index] = candidateLengths[index];
+        baseMessageIds[index] = candidateMessageIds[index];
+        candidates[index] = base;
+        candidateMessageIds[index] = -1;
+    }
+
+    /**
+     * Discards the base of a type after a transmission of it failed
+     */
+    synchronized void failed(byte type) {
+        int index = type & 0xFF;
+        baseLengths[index] = -1;
+        candidateMessageIds[index] = -1;
+    }
+
+    /**
+     * @return the encoded length or -1 if it wouldn't be smaller than the full payload
+     */
+    private int encodeDelta(int index, byte[] payload, int offset, int length, byte[] target) {
+        byte[] base = bases[index];
+        int baseLength = baseLengths[index];
+        int limit = length + 1;
+        target[0] = MODE_DELTA;
+        target[1] = (byte) baseMessageIds[index];
+        target[2] = BitUtil.getByteAt(length, 0);
+        target[3] = BitUtil.getByteAt(length, 1);
+        int position = DELTA_HEADER_SIZE;
+        int runStart = 0;
+        while (runStart < length) {
+            int changedStart = runStart;
+            while (changedStart < length && xor(payload, offset, base, baseLength, changedStart) == 0) {
+                changedStart++;
+            }
+            if (changedStart == length) {
+                break; // unchanged until the end
+            }
+            int changedEnd = changedStart;
+            int unchanged = 0;
+            while (changedEnd + unchanged < length && unchanged < MIN_UNCHANGED_RUN) {
+                if (xor(payload, offset, base, baseLength, changedEnd + unchanged) == 0) {
+                    unchanged++;
+                } else {
+                    changedEnd += unchanged + 1;
+                    unchanged = 0;
+                }
+            }
+            int changedCount = changedEnd - changedStart;
+            int runLength = BitUtil.getVarIntSize(changedStart - runStart) + BitUtil.getVarIntSize(changedCount) + changedCount;
+            if (position + runLength >= limit) {
+                return -1;
+            }
+            position = BitUtil.putVarInt(target, position, changedStart - runStart);
+            position = BitUtil.putVarInt(target, position, changedCount);
+            for (int i = changedStart; i < changedEnd; i++) {
+                target[position++] = xor(payload, offset, base, baseLength, i);
+            }
+            runStart = changedEnd;
+        }
+        if (position >= limit) {
+            return -1;
+        }
+        int payloadChecksum = Client.createChecksum(payload, offset, length);
+        target[4] = BitUtil.getByteAt(payloadChecksum, 0);
+        target[5] = BitUtil.getByteAt(payloadChecksum, 1);
+        return position;
+    }
+
+    private static byte xor(byte[] payload, int offset, byte[] base, int baseLength, int index) {
+        return (byte) (payload[offset + index] ^ (index < baseLength ? base[index] : 0));
+    }
+
+}
@@ -0,0 +1,34 @@
+package net.seblit.packeteer;
+
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+
+/**
+ * Checks whether Flight Recorder events are enabled before creating them, so frequent events don't allocate while no
+ * recording is running
+ */
+final class EventUtil {
+
+    private static final ClassValue<EventType> EVENT_TYPES = new ClassValue<>() {
+        @Override
+        protected EventType computeValue(Class<?> type) {
+            return EventType.getEventType(type.asSubclass(Event.class));
+        }
+    };
+
+    private EventUtil() {
+    }
+
+    /**
+     * Flight Recorder is initialized by every recording, including those started on the command line or with jcmd.
+     * Until then, this doesn't initialize it
+     *
+     * @param eventClass The class of the event
+     * @return whether events of the class are enabled in any running recording
+     */
+    static boolean isEnabled(Class<? extends Event> eventClass) {
+        return FlightRecorder.isInitialized() && EVENT_TYPES.get(eventClass).isEnabled();
+    }
+
+}
@@ -0,0 +1,396 @@
+package net.seblit.packeteer;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import static net.seblit.packeteer.FrameEncoder.*;
+
+/**
+ * An incremental decoder for transmissions as specified by {@link Client#receive()}. Data may be fed in chunks of any
+ * size, for instance as handed over by non-blocking transports. The decoder keeps its state between calls and buffers
+ * partially received frames internally. After construction, decoding doesn't allocate.<br>
+ * <br>
+ * Typical usage feeds a buffer until it is exhausted
+ * <pre>
+ * while (buffer.hasRemaining()) {
+ *     if (decoder.decode(buffer) == FrameDecoder.Result.FRAME) {
+ *         handle(decoder.getType(), decoder.getPayload());
+ *     }
+ * }
+ * </pre>
+ * Pull based sources may use {@link #getRequiredBytes()} to read exactly as many bytes as the decoder needs to progress.<br>
+ * All {@link HeaderFormat}s are decoded. The last received protocol version and the last received version of each
+ * packet type are kept to fill in values omitted by {@link HeaderFormat#COMPACT_SESSION}.<br>
+ * Instances are not thread safe.
+ *
+ * @see FrameEncoder
+ */
+public class FrameDecoder {
+
+    private static final int STATE_START_LOW = 0;
+    private static final int STATE_START_HIGH = 1;
+    private static final int STATE_PROTOCOL_VERSION = 2;
+    private static final int STATE_HEADER = 3;
+    private static final int STATE_PAYLOAD = 4;
+    private static final int STATE_COMPACT_CONTROL = 5;
+    private static final int STATE_COMPACT_FIELDS = 6;
+    private static final int STATE_COMPACT_LENGTH = 7;
+    private static final int STATE_COMPACT_TRAILER = 8;
+    private static final int MAX_PAYLOAD_LENGTH = 0xFFFF;
+    private final ProtocolPolicy policy;
+    private final byte[] header = new byte[HEADER_BASE_SIZE + 4 + HEADER_CHECKSUM_SIZE];
+    private final byte[] compactScratch = new byte[MAX_COMPACT_FIELDS_SIZE + 4 + HEADER_CHECKSUM_SIZE];
+    private final int[] sessionVersions = new int[256];
+    private int sessionProtocolVersion = -1;
+    private int control = 0;
+    private int compactLength = 0;
+    private int lengthShift = 0;
+    private final byte[] payload = new byte[MAX_PAYLOAD_LENGTH];
+    private final ByteBuffer payloadView = ByteBuffer.wrap(payload).asReadOnlyBuffer();
+    private int state = STATE_START_LOW;
+    private int position = 0;
+    private int headerLength = 0;
+    private int payloadLength = 0;
+    private PayloadChecksum payloadChecksum = PayloadChecksum.CRC16;
+    private int skippedBytes = 0;
+    private boolean resetSkippedBytes = false;
+
+    /**
+     * The outcome of a call to {@link #decode(ByteBuffer)}
+     */
+    public enum Result {
+        /**
+         * All provided data was consumed without completing a frame
+         */
+        INCOMPLETE,
+        /**
+         * A frame was completed and validated. Its content is available until the next call to {@link #decode(ByteBuffer)}
+         */
+        FRAME,
+        /**
+         * A header was received but its checksum didn't match. It was discarded and the decoder scans for the next start bytes
+         */
+        HEADER_CORRUPT,
+        /**
+         * A frame with valid header was received but its payload checksum didn't match. Header information remains
+         * available until the next call to {@link #decode(ByteBuffer)}
+         */
+        PAYLOAD_CORRUPT
+    }
+
+    /**
+     * Creates a new instance
+     *
+     * @param policy The {@link ProtocolPolicy} deciding the structure of received transmissions
+     */
+    public FrameDecoder(@NotNull ProtocolPolicy policy) {
+        this.policy = policy;
+        Arrays.fill(sessionVersions, -1);
+    }
+
+    /**
+     * Consumes bytes from source until either a frame was completed or source has no bytes remaining. Bytes following a
+     * completed frame are left in source.
+     *
+     * @param source The buffer to consume bytes from
+     * @return the {@link Result} of decoding
+     */
+    public @NotNull Result decode(@NotNull ByteBuffer source) {
+        if (resetSkippedBytes) {
+            skippedBytes = 0;
+            resetSkippedBytes = false;
+        }
+        while (source.hasRemaining()) {
+            switch (state) {
+                case STATE_START_LOW -> {
+                    if (source.get() == START_BYTE_LOW) {
+                        state = STATE_START_HIGH;
+                    } else {
+                        skippedBytes++;
+                    }
+                }
+                case STATE_START_HIGH -> {
+                    byte value = source.get();
+                    if (value == START_BYTE_HIGH) {
+                        state = STATE_PROTOCOL_VERSION;
+                    } else if (value == START_BYTE_HIGH_COMPACT) {
+                        state = STATE_COMPACT_CONTROL;
+                    } else if (value == START_BYTE_LOW) {
+                        skippedBytes++; // previous low byte was noise, this one may start a transmission
+                    } else {
+                        skippedBytes += 2;
+                        state = STATE_START_LOW;
+                    }
+                }
+                case STATE_PROTOCOL_VERSION -> {
+                    header[0] = source.get();
+                    payloadChecksum = policy.getPayloadChecksum(header[0]);
+                    headerLength = HEADER_BASE_SIZE + payloadChecksum.getSize();
+                    position = 1;
+                    state = STATE_HEADER;
+                }
+                case STATE_HEADER -> {
+                    position += transfer(source, header, position, headerLength + HEADER_CHECKSUM_SIZE - position);
+                    if (position == headerLength + HEADER_CHECKSUM_SIZE) {
+                        int receivedHeaderChecksum = BitUtil.intFrom16Bit(header[headerLength], header[headerLength + 1]);
+                        if (receivedHeaderChecksum != Client.createChecksum(header, 0, headerLength)) {
+                            return complete(Result.HEADER_CORRUPT);
+                        }
+                        payloadLength = BitUtil.intFrom16Bit(header[5], header[6]);
+                        updateSession(true, true);
+                        Result result = completeHeader();
+                        if (result != null) {
+                            return result;
+                        }
+                    }
+                }
+                case STATE_COMPACT_CONTROL -> {
+                    control = source.get() & 0xFF;
+                    if ((control & ~0xF) != 0) {
+                        return complete(Result.HEADER_CORRUPT);
+                    }
+                    compactLength = MAX_COMPACT_FIELDS_SIZE;
+                    for (int bit = CONTROL_OMIT_PROTOCOL_VERSION; bit <= CONTROL_OMIT_FLAGS; bit++) {
+                        if (BitUtil.isFlagSet(control, bit)) {
+                            compactLength--;
+                        }
+                    }
+                    position = 0;
+                    state = STATE_COMPACT_FIELDS;
+                }
+                case STATE_COMPACT_FIELDS -> {
+                    position += transfer(source, compactScratch, position, compactLength - position);
+                    if (position == compactLength && !readCompactFields()) {
+                        return complete(Result.HEADER_CORRUPT); // omitted values are unknown
+                    }
+                }
+                case STATE_COMPACT_LENGTH -> {
+                    byte value = source.get();
+                    payloadLength |= (value & 0x7F) << lengthShift;
+                    lengthShift += 7;
+                    if ((value & 0x80) == 0) {
+                        compactLength = payloadChecksum.getSize() + HEADER_CHECKSUM_SIZE;
+                        position = 0;
+                        state = STATE_COMPACT_TRAILER;
+                    } else if (lengthShift >= 7 * MAX_VAR_INT_LENGTH_SIZE) {
+                        return complete(Result.HEADER_CORRUPT);
+                    }
+                }
+                case STATE_COMPACT_TRAILER -> {
+                    position += transfer(source, compactScratch, position, compactLength - position);
+                    if (position == compactLength) {
+                        if (payloadLength > MAX_PAYLOAD_LENGTH || !readCompactTrailer()) {
+                            return complete(Result.HEADER_CORRUPT);
+                        }
+                        updateSession(!BitUtil.isFlagSet(control, CONTROL_OMIT_PROTOCOL_VERSION),
+                                !BitUtil.isFlagSet(control, CONTROL_OMIT_VERSION));
+                        Result result = completeHeader();
+                        if (result != null) {
+                            return result;
+                        }
+                    }
+                }
+                case STATE_PAYLOAD -> {
+                    position += transfer(source, payload, position, payloadLength - position);
+                    if (position == payloadLength) {
+                        return completePayload();
+                    }
+                }
+            }
+        }
+        return Result.INCOMPLETE;
+    }
+
+    /**
+     * @return the minimum count of bytes required to progress decoding. Feeding exactly this amount never leaves bytes
+     * following a frame in the source
+     */
+    public int getRequiredBytes() {
+        return switch (state) {
+            case STATE_HEADER -> headerLength + HEADER_CHECKSUM_SIZE - position;
+            case STATE_COMPACT_FIELDS, STATE_COMPACT_TRAILER -> compactLength - position;
+            case STATE_PAYLOAD -> payloadLength - position;
+            default -> 1;
+        };
+    }
+
+    /**
+     * @return whether a start byte was found and the frame following it is neither complete nor rejected yet
+     */
+    public boolean isDecodingFrame() {
+        return state != STATE_START_LOW;
+    }
+
+    /**
+     * Discards any partially decoded frame and returns to scanning for start bytes
+     */
+    public void reset() {
+        state = STATE_START_LOW;
+        position = 0;
+        skippedBytes = 0;
+    }
+
+    /**
+     * @return the count of bytes that were discarded while scanning for start bytes before the current frame
+     */
+    public int getSkippedBytes() {
+        return skippedBytes;
+    }
+
+    /**
+     * @return the protocol version of the last frame
+     */
+    public byte getProtocolVersion() {
+        return header[0];
+    }
+
+    /**
+     * @return the messageId of the last frame
+     */
+    public byte getMessageId() {
+        return header[1];
+    }
+
+    /**
+     * @return the packet type of the last frame
+     */
+    public byte getType() {
+        return header[2];
+    }
+
+    /**
+     * @return the packet version of the last frame
+     */
+    public byte getVersion() {
+        return header[3];
+    }
+
+    /**
+     * @return the packet flags of the last frame
+     */
+    public byte getFlags() {
+        return header[4];
+    }
+
+    /**
+     * @return the payload length of the last frame
+     */
+    public int getPayloadLength() {
+        return payloadLength;
+    }
+
+    /**
+     * The returned buffer is reused for every frame and only valid until the next call to {@link #decode(ByteBuffer)}.
+     * Each call resets its position to the first payload byte and its byte order to little endian.
+     *
+     * @return a read only view of the payload of the last frame
+     */
+    public @NotNull ByteBuffer getPayload() {
+        payloadView.clear().limit(payloadLength);
+        payloadView.order(ByteOrder.LITTLE_ENDIAN);
+        return payloadView;
+    }
+
+    /**
+     * @return the result if the frame is complete or null if its payload follows
+     */
+    private Result completeHeader() {
+        position = 0;
+        if (payloadLength == 0) {
+            return completePayload();
+        }
+        state = STATE_PAYLOAD;
+        return null;
+    }
+
+    /**
+     * Moves the received fields of a compact header into their standard header positions
+     *
+     * @return false if an omitted value is unknown
+     */
+    private boolean readCompactFields() {
+        int index = 0;
+        if (BitUtil.isFlagSet(control, CONTROL_OMIT_PROTOCOL_VERSION)) {
+            if (sessionProtocolVersion < 0) {
+                return false;
+            }
+            header[0] = (byte) sessionProtocolVersion;
+        } else {
+            header[0] = compactScratch[index++];
+        }
+        header[1] = compactScratch[index++];
+        header[2] = compactScratch[index++];
+        if (BitUtil.isFlagSet(control, CONTROL_OMIT_VERSION)) {
+            if (sessionVersions[header[2] & 0xFF] < 0) {
+                return false;
+            }
+            header[3] = (byte) sessionVersions[header[2] & 0xFF];
+        } else {
+            header[3] = compactScratch[index++];
+        }
+        header[4] = BitUtil.isFlagSet(control, CONTROL_OMIT_FLAGS) ? 0 : compactScratch[index];
+        payloadChecksum = policy.getPayloadChecksum(header[0]);
+        headerLength = HEADER_BASE_SIZE + payloadChecksum.getSize();
+        payloadLength = 0;
+        position = 0;
+        if (BitUtil.isFlagSet(control, CONTROL_NO_PAYLOAD)) {
+            compactLength = HEADER_CHECKSUM_SIZE;
+            state = STATE_COMPACT_TRAILER;
+        } else {
+            lengthShift = 0;
+            state = STATE_COMPACT_LENGTH;
+        }
+        return true;
+    }
+
+    /**
+     * Completes the standard header with length and payload checksum and validates the header checksum
+     *
+     * @return whether the header checksum matched
+     */
+    private boolean readCompactTrailer() {
+        int payloadChecksumSize = compactLength - HEADER_CHECKSUM_SIZE;
+        header[5] = BitUtil.getByteAt(payloadLength, 0);
+        header[6] = BitUtil.getByteAt(payloadLength, 1);
+        for (int i = 0; i < payloadChecksum.getSize(); i++) {
+            header[HEADER_BASE_SIZE + i] = i < payloadChecksumSize ? compactScratch[i] : 0;
+        }
+        int headerChecksum = Client.updateChecksum(0, (byte) control);
+        for (int i = 0; i < headerLength; i++) {
+            headerChecksum = Client.updateChecksum(headerChecksum, header[i]);
+        }
+        return headerChecksum == BitUtil.intFrom16Bit(compactScratch[payloadChecksumSize], compactScratch[payloadChecksumSize + 1]);
+    }
+
+    private void updateSession(boolean hasProtocolVersion, boolean hasVersion) {
+        if (hasProtocolVersion) {
+            sessionProtocolVersion = header[0] & 0xFF;
+        }
+        if (hasVersion) {
+            sessionVersions[header[2] & 0xFF] = header[3] & 0xFF;
+        }
+    }
+
+    private Result completePayload() {
+        int receivedPayloadChecksum = BitUtil.intFromBytes(header, HEADER_BASE_SIZE, payloadChecksum.getSize());
+        int actualPayloadChecksum = payloadChecksum.compute(payload, 0, payloadLength);
+        return complete(receivedPayloadChecksum == actualPayloadChecksum ? Result.FRAME : Result.PAYLOAD_CORRUPT);
+    }
+
+    private Result complete(Result result) {
+        state = STATE_START_LOW;
+        position = 0;
+        resetSkippedBytes = true;
+        return result;
+    }
+
+    private static int transfer(ByteBuffer source, byte[] target, int offset, int count) {
+        int transferred = Math.min(count, source.remaining());
+        source.get(target, offset, transferred);
+        return transferred;
+    }
+
+}
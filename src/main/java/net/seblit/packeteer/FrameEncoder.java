@@ -0,0 +1,189 @@
+package net.seblit.packeteer;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Writes transmissions as specified by {@link Client#send(Packet, byte...)} into a target {@link ByteBuffer}, using the
+ * {@link HeaderFormat} selected by the {@link ProtocolPolicy}. Encoding doesn't allocate and instances are stateless,
+ * so they may be shared between threads.
+ *
+ * @see FrameDecoder
+ */
+public class FrameEncoder {
+
+    static final byte START_BYTE_LOW = 0xF;
+    static final byte START_BYTE_HIGH = 0xA;
+    static final byte START_BYTE_HIGH_COMPACT = 0xB;
+    static final int HEADER_BASE_SIZE = 7;
+    static final int HEADER_CHECKSUM_SIZE = 2;
+    static final int CONTROL_OMIT_PROTOCOL_VERSION = 0;
+    static final int CONTROL_OMIT_VERSION = 1;
+    static final int CONTROL_OMIT_FLAGS = 2;
+    static final int CONTROL_NO_PAYLOAD = 3;
+    static final int MAX_COMPACT_FIELDS_SIZE = 5;
+    static final int MAX_VAR_INT_LENGTH_SIZE = 3;
+    private final ProtocolPolicy policy;
+
+    /**
+     * Creates a new instance
+     *
+     * @param policy The {@link ProtocolPolicy} deciding the structure of encoded transmissions
+     */
+    public FrameEncoder(@NotNull ProtocolPolicy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * @param protocolVersion The protocol version of the transmission
+     * @return the maximum count of bytes written by {@link #encodeHeader} for the protocol version. This includes start
+     * bytes, header and header checksum. Headers of {@link HeaderFormat#STANDARD} always have this length
+     */
+    public int getHeaderLength(byte protocolVersion) {
+        int payloadChecksumSize = policy.getPayloadChecksum(protocolVersion).getSize();
+        if (policy.getHeaderFormat(protocolVersion) == HeaderFormat.STANDARD) {
+            return 2 + HEADER_BASE_SIZE + payloadChecksumSize + HEADER_CHECKSUM_SIZE;
+        }
+        return 2 + 1 + MAX_COMPACT_FIELDS_SIZE + MAX_VAR_INT_LENGTH_SIZE + payloadChecksumSize + HEADER_CHECKSUM_SIZE;
+    }
+
+    /**
+     * Writes start bytes, header and header checksum of a transmission in the {@link HeaderFormat} of the protocol version
+     *
+     * @param target          The buffer to write to. Must have at least {@link #getHeaderLength(byte)} bytes remaining
+     * @param protocolVersion The protocol version of the transmission
+     * @param messageId       The messageId of the transmission
+     * @param type            The type of the packet
+     * @param version         The version of the packet
+     * @param flags           The flags of the packet
+     * @param payloadLength   The length of the payload that follows the header
+     * @param payloadChecksum The checksum of the payload, created by the {@link PayloadChecksum} of the protocol version
+     * @return the count of bytes written
+     */
+    public int encodeHeader(@NotNull ByteBuffer target, byte protocolVersion, byte messageId, byte type, byte version,
+                            byte flags, int payloadLength, int payloadChecksum) {
+        return encodeHeader(target, protocolVersion, messageId, type, version, flags, payloadLength, payloadChecksum, false, false);
+    }
+
+    /**
+     * Writes start bytes, header and header checksum of a transmission in the {@link HeaderFormat} of the protocol
+     * version. Values are only omitted for {@link HeaderFormat#COMPACT_SESSION}, callers must make sure the receiver knows them
+     *
+     * @param target              The buffer to write to. Must have at least {@link #getHeaderLength(byte)} bytes remaining
+     * @param protocolVersion     The protocol version of the transmission
+     * @param messageId           The messageId of the transmission
+     * @param type                The type of the packet
+     * @param version             The version of the packet
+     * @param flags               The flags of the packet
+     * @param payloadLength       The length of the payload that follows the header
+     * @param payloadChecksum     The checksum of the payload, created by the {@link PayloadChecksum} of the protocol version
+     * @param omitProtocolVersion Whether to omit the protocol version
+     * @param omitVersion         Whether to omit the packet version
+     * @return the count of bytes written
+     */
+    public int encodeHeader(@NotNull ByteBuffer target, byte protocolVersion, byte messageId, byte type, byte version,
+                            byte flags, int payloadLength, int payloadChecksum, boolean omitProtocolVersion, boolean omitVersion) {
+        PayloadChecksum checksum = policy.getPayloadChecksum(protocolVersion);
+        HeaderFormat format = policy.getHeaderFormat(protocolVersion);
+        if (format != HeaderFormat.STANDARD) {
+            boolean isSession = format == HeaderFormat.COMPACT_SESSION;
+            return encodeCompactHeader(target, checksum, protocolVersion, messageId, type, version, flags, payloadLength,
+                    payloadChecksum, isSession && omitProtocolVersion, isSession && omitVersion);
+        }
+        int start = target.position();
+        target.put(START_BYTE_LOW).put(START_BYTE_HIGH);
+        int headerChecksum = 0;
+        headerChecksum = put(target, protocolVersion, headerChecksum);
+        headerChecksum = put(target, messageId, headerChecksum);
+        headerChecksum = put(target, type, headerChecksum);
+        headerChecksum = put(target, version, headerChecksum);
+        headerChecksum = put(target, flags, headerChecksum);
+        headerChecksum = put(target, BitUtil.getByteAt(payloadLength, 0), headerChecksum);
+        headerChecksum = put(target, BitUtil.getByteAt(payloadLength, 1), headerChecksum);
+        for (int i = 0; i < checksum.getSize(); i++) {
+            headerChecksum = put(target, BitUtil.getByteAt(payloadChecksum, i), headerChecksum);
+        }
+        target.put(BitUtil.getByteAt(headerChecksum, 0)).put(BitUtil.getByteAt(headerChecksum, 1));
+        return target.position() - start;
+    }
+
+    /**
+     * Writes a complete transmission including its payload
+     *
+     * @param target          The buffer to write to. Must have at least {@link #getHeaderLength(byte)} plus length bytes remaining
+     * @param protocolVersion The protocol version of the transmission
+     * @param messageId       The messageId of the transmission
+     * @param type            The type of the packet
+     * @param version         The version of the packet
+     * @param flags           The flags of the packet
+     * @param payload         The payload to transmit. May be null if length is 0
+     * @param offset          The index of the first payload byte
+     * @param length          The count of payload bytes. May not be larger than 64Kib
+     */
+    public void encode(@NotNull ByteBuffer target, byte protocolVersion, byte messageId, byte type, byte version,
+                       byte flags, byte @Nullable [] payload, int offset, int length) {
+        int payloadChecksum = policy.getPayloadChecksum(protocolVersion).compute(payload, offset, length);
+        encodeHeader(target, protocolVersion, messageId, type, version, flags, length, payloadChecksum);
+        if (length > 0) {
+            target.put(payload, offset, length);
+        }
+    }
+
+    private static int encodeCompactHeader(ByteBuffer target, PayloadChecksum checksum, byte protocolVersion, byte messageId,
+                                           byte type, byte version, byte flags, int payloadLength, int payloadChecksum,
+                                           boolean omitProtocolVersion, boolean omitVersion) {
+        if (payloadLength == 0) {
+            payloadChecksum = 0;
+        }
+        int control = 0;
+        control = BitUtil.setFlag(control, CONTROL_OMIT_PROTOCOL_VERSION, omitProtocolVersion);
+        control = BitUtil.setFlag(control, CONTROL_OMIT_VERSION, omitVersion);
+        control = BitUtil.setFlag(control, CONTROL_OMIT_FLAGS, flags == 0);
+        control = BitUtil.setFlag(control, CONTROL_NO_PAYLOAD, payloadLength == 0);
+        // the header checksum covers the standard header including omitted values
+        int headerChecksum = Client.updateChecksum(0, (byte) control);
+        headerChecksum = Client.updateChecksum(headerChecksum, protocolVersion);
+        headerChecksum = Client.updateChecksum(headerChecksum, messageId);
+        headerChecksum = Client.updateChecksum(headerChecksum, type);
+        headerChecksum = Client.updateChecksum(headerChecksum, version);
+        headerChecksum = Client.updateChecksum(headerChecksum, flags);
+        headerChecksum = Client.updateChecksum(headerChecksum, BitUtil.getByteAt(payloadLength, 0));
+        headerChecksum = Client.updateChecksum(headerChecksum, BitUtil.getByteAt(payloadLength, 1));
+        for (int i = 0; i < checksum.getSize(); i++) {
+            headerChecksum = Client.updateChecksum(headerChecksum, BitUtil.getByteAt(payloadChecksum, i));
+        }
+        int start = target.position();
+        target.put(START_BYTE_LOW).put(START_BYTE_HIGH_COMPACT).put((byte) control);
+        if (!omitProtocolVersion) {
+            target.put(protocolVersion);
+        }
+        target.put(messageId).put(type);
+        if (!omitVersion) {
+            target.put(version);
+        }
+        if (flags != 0) {
+            target.put(flags);
+        }
+        if (payloadLength > 0) {
+            int length = payloadLength;
+            while ((length & ~0x7F) != 0) {
+                target.put((byte) ((length & 0x7F) | 0x80));
+                length >>>= 7;
+            }
+            target.put((byte) length);
+            for (int i = 0; i < checksum.getSize(); i++) {
+                target.put(BitUtil.getByteAt(payloadChecksum, i));
+            }
+        }
+        target.put(BitUtil.getByteAt(headerChecksum, 0)).put(BitUtil.getByteAt(headerChecksum, 1));
+        return target.position() - start;
+    }
+
+    private static int put(ByteBuffer target, byte value, int headerChecksum) {
+        target.put(value);
+        return Client.updateChecksum(headerChecksum, value);
+    }
+
+}
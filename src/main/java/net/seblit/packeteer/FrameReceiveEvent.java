@@ -0,0 +1,43 @@
+package net.seblit.packeteer;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event for a frame received by {@link Client}. Lasts from requesting the adapter lock until the packet
+ * was processed and acknowledged. Not recorded if no valid frame was read
+ */
+@Name("net.seblit.packeteer.FrameReceive")
+@Label("Frame Receive")
+@Category("Packeteer")
+@Description("A frame read from a NetworkAdapter, including the wait for the adapter lock, processing and acknowledgement")
+@StackTrace(false)
+@Enabled(false)
+final class FrameReceiveEvent extends Event {
+
+    @Label("Message ID")
+    byte messageId;
+
+    @Label("Type")
+    byte type;
+
+    @Label("Payload Size")
+    @DataAmount
+    int payloadSize;
+
+    @Label("Lock Wait")
+    @Timespan
+    long lockWait;
+
+    @Label("Processed")
+    @Description("Whether the packet was created and processed without error. Always false for acknowledgements")
+    boolean processed;
+
+}
@@ -0,0 +1,42 @@
+package net.seblit.packeteer;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event for a frame written by {@link Client}. Lasts from requesting the adapter lock until the frame
+ * was written. Attempts after the first are retransmissions
+ */
+@Name("net.seblit.packeteer.FrameSend")
+@Label("Frame Send")
+@Category("Packeteer")
+@Description("A frame written to a NetworkAdapter, including the wait for the adapter lock")
+@StackTrace(false)
+@Enabled(false)
+final class FrameSendEvent extends Event {
+
+    @Label("Message ID")
+    byte messageId;
+
+    @Label("Type")
+    byte type;
+
+    @Label("Payload Size")
+    @DataAmount
+    int payloadSize;
+
+    @Label("Attempt")
+    int attempt;
+
+    @Label("Lock Wait")
+    @Timespan
+    long lockWait;
+
+}
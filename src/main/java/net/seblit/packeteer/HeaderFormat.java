@@ -0,0 +1,42 @@
+package net.seblit.packeteer;
+
+/**
+ * The header formats a {@link Client} can send, selected per protocol version by {@link ProtocolPolicy#getHeaderFormat(byte)}.
+ * Receivers detect the format of each transmission by its start bytes, so they decode all formats regardless of their policy.
+ */
+public enum HeaderFormat {
+
+    /**
+     * The format specified by {@link Client#send(Packet, byte...)}. Starts with 0xF 0xA
+     */
+    STANDARD,
+    /**
+     * A format for constrained links that starts with 0xF 0xB, followed by
+     * <li>Control byte. Bit 0 is set if the protocol version is omitted, bit 1 if the packet version is omitted, bit 2
+     * if the flags are omitted because they are 0 and bit 3 if there is no payload. All other bits are 0</li>
+     * <li>Protocol version, unless omitted</li>
+     * <li>messageId</li>
+     * <li>{@link Packet#getType()}</li>
+     * <li>{@link Packet#getVersion()}, unless omitted</li>
+     * <li>{@link Packet#getFlags()}, unless omitted</li>
+     * <li>Payload length as {@link BitUtil#putVarInt variable length int} and payload checksum from low to high byte,
+     * unless there is no payload</li>
+     * <li>Low, then high byte of the 16-bit CRC16 header checksum</li>
+     * The header checksum is derived from the control byte followed by the header as specified by {@link #STANDARD},
+     * including all omitted values. Omitted values the receiver doesn't know therefore result in a header checksum mismatch.
+     * Packets without payload and flags are sent with 9 instead of 13 bytes.<br>
+     * This format never omits protocol or packet version.
+     */
+    COMPACT,
+    /**
+     * {@link #COMPACT}, but omits the protocol version once the receiver acknowledged any transmission and the packet
+     * version once the receiver acknowledged a transmission of the same type and version, which reduces packets without
+     * payload and flags to 7 bytes. Receivers remember the last
+     * received protocol version and the last received version per packet type. Retransmissions always include both
+     * values, so a send whose first attempt is rejected by a receiver that lost its session, for instance by restarting,
+     * succeeds on its first retransmission. Afterwards, values of other types are sent again until they were acknowledged
+     * anew. The same applies if acknowledgement isn't received after using up all send attempts.
+     */
+    COMPACT_SESSION
+
+}
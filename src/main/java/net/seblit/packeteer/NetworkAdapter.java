@@ -2,6 +2,8 @@ package net.seblit.packeteer;
 
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Arrays;
+
 public interface NetworkAdapter {
 
     /**
@@ -12,6 +14,21 @@ public interface NetworkAdapter {
      * */
     byte @NotNull [] read(int count) throws NetworkException;
 
+    /**
+     * Reads up to the requested amount of bytes from the source of this adapter, waiting at most for the timeout.
+     * Unlike {@link #read(int)}, this returns fewer bytes, possibly none, if the timeout elapsed before all bytes were
+     * available. A timeout of 0 returns the bytes that are available without waiting. The default implementation
+     * ignores the timeout and calls {@link #read(int)}. Implementations should override this to allow
+     * {@link Client#receive(long, java.util.concurrent.TimeUnit)} and sends with timeout to meet their deadlines.
+     * @param count The desired amount of bytes
+     * @param timeoutNanos The maximum time to wait in nanoseconds
+     * @return a byte[] of at most the requested byte amount containing the read bytes
+     * @throws NetworkException if any error occur while reading
+     * */
+    default byte @NotNull [] read(int count, long timeoutNanos) throws NetworkException {
+        return read(count);
+    }
+
     /**
      * Writes the provided bytes to the output of this adapter
      * @param data A byte[] containing the data to be written. If empty, this call is to be ignored
@@ -19,4 +36,16 @@ public interface NetworkAdapter {
      * */
     void write(byte... data) throws NetworkException;
 
+    /**
+     * Writes a slice of the provided bytes to the output of this adapter. The default implementation copies the slice
+     * and passes it to {@link #write(byte...)}. Implementations should override this to avoid the copy.
+     * @param data A byte[] containing the data to be written
+     * @param offset The index of the first byte to write
+     * @param length The count of bytes to write. If 0, this call is to be ignored
+     * @throws NetworkException if any error occur while writing
+     * */
+    default void write(byte @NotNull [] data, int offset, int length) throws NetworkException {
+        write(Arrays.copyOfRange(data, offset, offset + length));
+    }
+
 }
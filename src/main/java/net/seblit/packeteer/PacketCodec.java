@@ -0,0 +1,88 @@
+package net.seblit.packeteer;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serializes values of type T as payload of packets with a specific type and version. Codecs write directly into the
+ * outgoing transmission buffer of a {@link Client} and read directly from its receive buffer, so no intermediate
+ * payload arrays are created. Buffers passed to codecs use little endian byte order, like the header.<br>
+ * Nested structures are supported by calling the encode and decode methods of other codecs.
+ *
+ * @param <T> The type of values serialized by this codec
+ * @see Client#send(Packet, PacketCodec, Object)
+ * @see DecodedPacket
+ * @see PacketCodecRegistry
+ */
+public interface PacketCodec<T> {
+
+    /**
+     * @return the type of packets whose payload is serialized by this codec
+     */
+    byte getType();
+
+    /**
+     * @return the version of packets whose payload is serialized by this codec
+     */
+    byte getVersion();
+
+    /**
+     * Writes value into the payload of a packet
+     *
+     * @param value  The value to write
+     * @param target The buffer to write to, starting at its position. Has up to 64Kib remaining
+     */
+    void encode(@NotNull T value, @NotNull ByteBuffer target);
+
+    /**
+     * Reads a value from the payload of a packet. The source buffer is reused after decoding, so the returned value
+     * must not reference it
+     *
+     * @param source The buffer containing the remaining payload
+     * @return the decoded value
+     * @throws ProcessingException if the payload couldn't be decoded
+     */
+    @NotNull
+    T decode(@NotNull ByteBuffer source) throws ProcessingException;
+
+    /**
+     * Writes a string as UTF-8 bytes prefixed with their 16-bit length
+     *
+     * @param target The buffer to write to
+     * @param value  The string to write. Its UTF-8 representation may not be longer than 64Kib
+     */
+    static void putString(@NotNull ByteBuffer target, @NotNull String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("String may not be longer than 65535 bytes");
+        }
+        target.put(BitUtil.getByteAt(bytes.length, 0)).put(BitUtil.getByteAt(bytes.length, 1)).put(bytes);
+    }
+
+    /**
+     * Reads a string written by {@link #putString(ByteBuffer, String)}
+     *
+     * @param source The buffer to read from
+     * @return the read string
+     * @throws ProcessingException if source doesn't contain enough bytes
+     */
+    static @NotNull String getString(@NotNull ByteBuffer source) throws ProcessingException {
+        try {
+            int length = BitUtil.intFrom16Bit(source.get(), source.get());
+            if (!source.hasArray()) {
+                byte[] bytes = new byte[length];
+                source.get(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+            String value = new String(source.array(), source.arrayOffset() + source.position(), length, StandardCharsets.UTF_8);
+            source.position(source.position() + length);
+            return value;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException error) {
+            throw new ProcessingException("Payload too short for string", error);
+        }
+    }
+
+}
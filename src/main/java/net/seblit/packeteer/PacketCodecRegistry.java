@@ -0,0 +1,124 @@
+package net.seblit.packeteer;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Looks up {@link PacketCodec}s by packet type and version. Lookups are constant time array accesses. Codecs should be
+ * registered before the registry is shared with other threads.<br>
+ * As {@link PacketFactory} of a {@link Client}, it creates a {@link DecodedPacket} for received packets of types whose
+ * codec was registered with a {@link DecodedPacketFactory}, so their payload is decoded by the registered codec. Other
+ * packets are created by the fallback factory.
+ */
+public class PacketCodecRegistry implements PacketFactory {
+
+    private final PacketCodec<?>[][] codecs = new PacketCodec<?>[256][];
+    private final DecodedPacketFactory<?>[][] factories = new DecodedPacketFactory<?>[256][];
+    private final PacketFactory fallback;
+
+    /**
+     * Creates a new instance of {@link PacketCodecRegistry} that fails to create packets of types without a registered
+     * {@link DecodedPacketFactory}
+     */
+    public PacketCodecRegistry() {
+        this.fallback = null;
+    }
+
+    /**
+     * Creates a new instance of {@link PacketCodecRegistry}
+     *
+     * @param fallback The {@link PacketFactory} to create packets of types without a registered
+     *                 {@link DecodedPacketFactory}
+     */
+    public PacketCodecRegistry(@NotNull PacketFactory fallback) {
+        this.fallback = fallback;
+    }
+
+    /**
+     * Registers a codec for its type and version, which is only used to send packets
+     *
+     * @param codec The {@link PacketCodec} to register
+     * @throws IllegalArgumentException if the codec uses type {@link Packet#TYPE_ACK} or a codec is already registered
+     *                                  for the same type and version
+     */
+    public void register(@NotNull PacketCodec<?> codec) {
+        put(codec, null);
+    }
+
+    /**
+     * Registers a codec for its type and version, which is also used to decode received packets
+     *
+     * @param codec   The {@link PacketCodec} to register
+     * @param factory The {@link DecodedPacketFactory} creating the packets that process the decoded values, for
+     *                instance a constructor reference
+     * @param <T>     The type of values serialized by the codec
+     * @throws IllegalArgumentException if the codec uses type {@link Packet#TYPE_ACK} or a codec is already registered
+     *                                  for the same type and version
+     */
+    public <T> void register(@NotNull PacketCodec<T> codec, @NotNull DecodedPacketFactory<T> factory) {
+        put(codec, factory);
+    }
+
+    private void put(PacketCodec<?> codec, DecodedPacketFactory<?> factory) {
+        if (codec.getType() == Packet.TYPE_ACK) {
+            throw new IllegalArgumentException("Type " + Packet.TYPE_ACK + " is reserved for acknowledgements");
+        }
+        int type = codec.getType() & 0xFF;
+        if (codecs[type] == null) {
+            codecs[type] = new PacketCodec<?>[256];
+            factories[type] = new DecodedPacketFactory<?>[256];
+        }
+        int version = codec.getVersion() & 0xFF;
+        if (codecs[type][version] != null) {
+            throw new IllegalArgumentException("Codec for type " + codec.getType() + " version " + codec.getVersion() + " already registered");
+        }
+        codecs[type][version] = codec;
+        factories[type][version] = factory;
+    }
+
+    /**
+     * @param type    The packet type
+     * @param version The packet version
+     * @param <T>     The type of values serialized by the codec. Not checked, callers must know the registered codec
+     * @return the {@link PacketCodec} registered for type and version or null if none is
+     */
+    @SuppressWarnings("unchecked")
+    public <T> @Nullable PacketCodec<T> get(byte type, byte version) {
+        PacketCodec<?>[] versions = codecs[type & 0xFF];
+        return versions != null ? (PacketCodec<T>) versions[version & 0xFF] : null;
+    }
+
+    /**
+     * @param packet The packet to look up the codec for
+     * @param <T>    The type of values serialized by the codec. Not checked, callers must know the registered codec
+     * @return the {@link PacketCodec} registered for {@link Packet#getType()} and {@link Packet#getVersion()} or null if none is
+     */
+    public <T> @Nullable PacketCodec<T> get(@NotNull Packet packet) {
+        return get(packet.getType(), packet.getVersion());
+    }
+
+    /**
+     * Creates a {@link DecodedPacket} with the registered codec and {@link DecodedPacketFactory}, or delegates to the
+     * fallback factory if none was registered for type and version
+     *
+     * @throws ProcessingException if neither a {@link DecodedPacketFactory} nor a fallback factory can create the
+     *                             packet
+     */
+    @Override
+    public @NotNull IncomingPacket create(byte protocolVersion, byte type, byte version, byte flags) throws ProcessingException {
+        DecodedPacketFactory<?>[] versions = factories[type & 0xFF];
+        DecodedPacketFactory<?> factory = versions != null ? versions[version & 0xFF] : null;
+        if (factory != null) {
+            return create(factory, get(type, version), flags);
+        } else if (fallback != null) {
+            return fallback.create(protocolVersion, type, version, flags);
+        }
+        throw new ProcessingException("No packet registered for type " + type + " version " + version);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> IncomingPacket create(DecodedPacketFactory<T> factory, PacketCodec<?> codec, byte flags) throws ProcessingException {
+        return factory.create((PacketCodec<T>) codec, flags);
+    }
+
+}
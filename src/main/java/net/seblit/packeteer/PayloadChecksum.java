@@ -0,0 +1,53 @@
+package net.seblit.packeteer;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A checksum algorithm used by a {@link Client} to validate payloads. Which algorithm is used for a transmission is
+ * decided by the {@link ProtocolPolicy} of the client based off the protocol version
+ */
+public interface PayloadChecksum {
+
+    /**
+     * 16-bit CRC-16/IBM checksum, see {@link Client#send(Packet, byte...)}
+     */
+    PayloadChecksum CRC16 = new Crc16Checksum();
+    /**
+     * 32-bit CRC-32C (Castagnoli) checksum, see {@link java.util.zip.CRC32C}. Stronger than {@link #CRC16} for large
+     * payloads and hardware accelerated on most platforms
+     */
+    PayloadChecksum CRC32C = new Crc32cChecksum();
+
+    /**
+     * @return the count of bytes (1-4) the checksum occupies within the header
+     */
+    int getSize();
+
+    /**
+     * @param data   The data to generate the checksum for. May be null
+     * @param offset The index of the first byte within data
+     * @param length The count of bytes to include. Must be 0 if data is null
+     * @return the checksum with its lower {@link #getSize()} bytes set
+     */
+    int compute(byte @Nullable [] data, int offset, int length);
+
+    /**
+     * The default implementation copies buffers without accessible array. Implementations should override this to
+     * avoid the copy.
+     *
+     * @param data The buffer whose remaining bytes to generate the checksum for. Its position is not changed
+     * @return the checksum with its lower {@link #getSize()} bytes set
+     */
+    default int compute(@NotNull ByteBuffer data) {
+        if (data.hasArray()) {
+            return compute(data.array(), data.arrayOffset() + data.position(), data.remaining());
+        }
+        byte[] copy = new byte[data.remaining()];
+        data.get(data.position(), copy);
+        return compute(copy, 0, copy.length);
+    }
+
+}
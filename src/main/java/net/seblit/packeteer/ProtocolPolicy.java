@@ -0,0 +1,48 @@
+package net.seblit.packeteer;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Decides how a {@link Client} transmits data for a given protocol version. Both transmission partners must use
+ * policies that agree on every protocol version they use. Senders apply the policy for their own protocol version and
+ * receivers apply the policy for the protocol version received in the header
+ */
+public interface ProtocolPolicy {
+
+    /**
+     * Uses {@link PayloadChecksum#CRC16} for all protocol versions
+     */
+    ProtocolPolicy DEFAULT = protocolVersion -> PayloadChecksum.CRC16;
+
+    /**
+     * @param protocolVersion The protocol version of the transmission
+     * @return the {@link PayloadChecksum} used to validate payloads of the transmission
+     */
+    @NotNull
+    PayloadChecksum getPayloadChecksum(byte protocolVersion);
+
+    /**
+     * @param protocolVersion The protocol version of the transmission
+     * @return the {@link HeaderFormat} used by senders of the protocol version. By default, {@link HeaderFormat#STANDARD}
+     */
+    default @NotNull HeaderFormat getHeaderFormat(byte protocolVersion) {
+        return HeaderFormat.STANDARD;
+    }
+
+    /**
+     * Delta encoded payloads are transmitted as difference to the last acknowledged payload of the same type, which
+     * saves bandwidth for packets whose payloads change little between transmissions. Only transmissions that require
+     * acknowledgement establish a base, and payloads are sent in full again after a transmission of their type failed.
+     * Payloads of delta encoded types may be 1 byte shorter than others. Delta encoding works best if packets of a type
+     * are sent by one thread at a time.
+     *
+     * @param protocolVersion The protocol version of the transmission
+     * @param type            The packet type
+     * @return whether payloads of the packet type are delta encoded. Never applied to {@link Packet#TYPE_ACK}.
+     * By default, no type is delta encoded
+     */
+    default boolean isDeltaEncoded(byte protocolVersion, byte type) {
+        return false;
+    }
+
+}
@@ -0,0 +1,28 @@
+package net.seblit.packeteer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This Exception is thrown by {@link Client#receive(long, TimeUnit)} if no packet was received before the timeout elapsed
+ * */
+public class ReceiveTimeoutException extends NetworkException{
+
+    public ReceiveTimeoutException() {
+    }
+
+    public ReceiveTimeoutException(String message) {
+        super(message);
+    }
+
+    public ReceiveTimeoutException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public ReceiveTimeoutException(Throwable cause) {
+        super(cause);
+    }
+
+    public ReceiveTimeoutException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+}
@@ -0,0 +1,39 @@
+package net.seblit.packeteer;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Registers an {@link IncomingPacket} in a {@link PacketFactory} that is generated at compile time by
+ * {@link net.seblit.packeteer.processor.PacketFactoryProcessor}. The generated factory switches over type and version
+ * and directly invokes the constructor of the matching packet, so neither reflection nor classpath scanning is involved.<br>
+ * <br>
+ * Annotated classes must
+ * <li>extend {@link IncomingPacket} and not be abstract</li>
+ * <li>be accessible from their package. Nested classes must be static</li>
+ * <li>declare a non-private constructor taking either (byte flags) or (byte type, byte version, byte flags)</li>
+ * All classes of a package using the same {@link #factory()} name are registered in the same factory, which is
+ * generated into that package.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface RegisterPacket {
+
+    /**
+     * @return the packet type. May not be {@link Packet#TYPE_ACK}
+     */
+    byte type();
+
+    /**
+     * @return the packet version
+     */
+    byte version();
+
+    /**
+     * @return the simple name of the generated {@link PacketFactory}
+     */
+    String factory() default "GeneratedPacketFactory";
+
+}
@@ -0,0 +1,25 @@
+package net.seblit.packeteer;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for bytes a {@link Client} skipped while scanning for start bytes
+ */
+@Name("net.seblit.packeteer.Resync")
+@Label("Resync")
+@Category("Packeteer")
+@Description("Bytes skipped while scanning for the start of a frame")
+@StackTrace(false)
+final class ResyncEvent extends Event {
+
+    @Label("Skipped Bytes")
+    @DataAmount
+    int skippedBytes;
+
+}
@@ -0,0 +1,569 @@
+package net.seblit.packeteer.bond;
+
+import net.seblit.packeteer.BitUtil;
+import net.seblit.packeteer.FrameDecoder;
+import net.seblit.packeteer.FrameEncoder;
+import net.seblit.packeteer.HeaderFormat;
+import net.seblit.packeteer.NetworkAdapter;
+import net.seblit.packeteer.NetworkException;
+import net.seblit.packeteer.Packet;
+import net.seblit.packeteer.ProtocolPolicy;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link NetworkAdapter} that bonds several links into one, so a {@link net.seblit.packeteer.Client} can use their
+ * combined bandwidth. Both transmission partners need to bond the same links.<br>
+ * <br>
+ * <h1>Sending</h1>
+ * Written bytes are split into frames by a {@link FrameDecoder}. Each frame is queued to one link and written by a
+ * writer thread of that link, so writes return once the frame was queued. Links are chosen by smooth weighted
+ * round-robin, weighted by a rate estimated for each link. The rate is estimated from the round-trip time of frames that
+ * required acknowledgement, measured from queueing the frame until its acknowledgement was read, so it drops with the
+ * latency, backlog and losses of the link. Frames whose acknowledgement is still missing when they are retransmitted
+ * count with the time since they were queued. Until a link was measured, it is weighted by the rate configured for it,
+ * or equally if none were configured. The time a write takes to return isn't used as rate, as buffering adapters return
+ * before their link transmitted the data. Links whose last write failed are only chosen occasionally until a write
+ * succeeded again, while slow links are still chosen occasionally so their estimate can recover.<br>
+ * If the queue of the chosen link is full, writing waits up to the read timeout for space. A link whose queue stays full,
+ * for instance because its writes block, is considered failed and skipped while its queue is full, so it doesn't stall
+ * the other links. The frame is queued to another link instead, or discarded if all links stopped writing.<br>
+ * A frame that requires acknowledgement and is written again before its acknowledgement was read is considered a
+ * retransmission and is written to a different link than before.
+ * <h1>Receiving</h1>
+ * A reader thread per link decodes its incoming frames and re-encodes them in {@link HeaderFormat#STANDARD}.
+ * Acknowledgements can be read immediately. Other frames are ordered by messageId: frames that arrive ahead of a missing
+ * frame are held back until the missing frame arrived or the gap timeout elapsed. Frames whose messageId was already
+ * passed, like retransmissions, can be read immediately. Ordering starts at messageId 0, the first messageId of a new
+ * {@link net.seblit.packeteer.Client}. If the sender started earlier, its first frames are held back for up to the gap
+ * timeout.
+ * <h1>Limitations</h1>
+ * <li>Links should block in {@link NetworkAdapter#read(int)} until data is available or a timeout elapsed</li>
+ * <li>{@link HeaderFormat#COMPACT_SESSION} is not supported, as each link only knows the values omitted from its
+ * headers if it carried the headers that included them</li>
+ * <li>Errors of links aren't thrown to callers. Lost frames are recovered by retransmission</li>
+ */
+public class BondedAdapter implements NetworkAdapter, Closeable {
+
+    private static final int MAX_QUEUED_FRAMES = 64;
+    private static final int MAX_AVAILABLE_BYTES = 1 << 20;
+    private static final int MAX_HELD_DISTANCE = 128;
+    // failed and slow links are chosen at most this many times less often than the fastest one, so they can recover
+    private static final double MIN_WEIGHT_DIVISOR = 64;
+    // weight of a new round-trip sample in the estimated rate of a link
+    private static final double ESTIMATE_SMOOTHING = 0.125;
+    private static final long READ_RETRY_DELAY_NANOS = 10_000_000;
+    private final ProtocolPolicy policy;
+    private final FrameEncoder standardEncoder;
+    private final long readTimeoutNanos;
+    private final long gapTimeoutNanos;
+    private final Link[] links;
+    // guards received frames and the links of frames awaiting acknowledgement
+    private final Object lock = new Object();
+    // guards splitting written bytes into frames and choosing links
+    private final Object writeLock = new Object();
+    private final FrameDecoder outboundDecoder;
+    private byte[] pendingFrame = new byte[64];
+    private int pendingLength = 0;
+    private final int[] sentLinks = new int[256];
+    private final byte[] sentTypes = new byte[256];
+    private final int[] sentLengths = new int[256];
+    private final long[] sentTimes = new long[256];
+    private final byte[][] heldFrames = new byte[256][];
+    private final long[] heldSince = new long[256];
+    private int heldCount = 0;
+    private int nextMessageId = 0;
+    private final ArrayDeque<byte[]> availableFrames = new ArrayDeque<>();
+    private int availablePosition = 0;
+    private int availableBytes = 0;
+    private volatile boolean closed = false;
+
+    /**
+     * Creates a new instance of {@link BondedAdapter} that weights all links equally and starts a reader and a writer
+     * thread per link
+     *
+     * @param policy            The {@link ProtocolPolicy} of the {@link net.seblit.packeteer.Client} using this adapter
+     * @param readTimeoutMillis Maximum time in milliseconds {@link #read(int)} waits for data before throwing a
+     *                          {@link NetworkException}, which lets waiting for acknowledgement end. Also the maximum
+     *                          time writes wait for space in the queues of the links
+     * @param gapTimeoutMillis  Maximum time in milliseconds frames are held back while waiting for a missing frame
+     * @param links             The adapters of the links to bond. At least one
+     */
+    public BondedAdapter(@NotNull ProtocolPolicy policy, long readTimeoutMillis, long gapTimeoutMillis,
+                         @NotNull NetworkAdapter @NotNull ... links) {
+        this(policy, readTimeoutMillis, gapTimeoutMillis, equalRates(links.length), links);
+    }
+
+    /**
+     * Creates a new instance of {@link BondedAdapter} and starts a reader and a writer thread per link
+     *
+     * @param policy            The {@link ProtocolPolicy} of the {@link net.seblit.packeteer.Client} using this adapter
+     * @param readTimeoutMillis Maximum time in milliseconds {@link #read(int)} waits for data before throwing a
+     *                          {@link NetworkException}, which lets waiting for acknowledgement end. Also the maximum
+     *                          time writes wait for space in the queues of the links
+     * @param gapTimeoutMillis  Maximum time in milliseconds frames are held back while waiting for a missing frame
+     * @param linkRates         The initial rate of each link, for instance in bytes per second. Only their ratio
+     *                          matters. Used until the rate of a link was estimated from acknowledged frames
+     * @param links             The adapters of the links to bond. At least one, in the order of their rates
+     */
+    public BondedAdapter(@NotNull ProtocolPolicy policy, long readTimeoutMillis, long gapTimeoutMillis,
+                         double @NotNull [] linkRates, @NotNull NetworkAdapter @NotNull ... links) {
+        if (links.length == 0) {
+            throw new IllegalArgumentException("At least one link is required");
+        } else if (linkRates.length != links.length) {
+            throw new IllegalArgumentException("A rate is required for each link");
+        }
+        for (double rate : linkRates) {
+            if (!(rate > 0) || Double.isInfinite(rate)) {
+                throw new IllegalArgumentException("Link rates must be positive and finite");
+            }
+        }
+        this.policy = policy;
+        this.standardEncoder = new FrameEncoder(policy::getPayloadChecksum);
+        this.outboundDecoder = new FrameDecoder(policy);
+        this.readTimeoutNanos = readTimeoutMillis * 1_000_000L;
+        this.gapTimeoutNanos = gapTimeoutMillis * 1_000_000L;
+        Arrays.fill(sentLinks, -1);
+        this.links = new Link[links.length];
+        for (int i = 0; i < links.length; i++) {
+            this.links[i] = new Link(i, links[i], linkRates[i]);
+        }
+        for (Link link : this.links) {
+            link.reader.start();
+            link.writer.start();
+        }
+    }
+
+    /**
+     * Reads the requested amount of bytes from the received frames, waiting up to the read timeout
+     *
+     * @throws NetworkException if not enough bytes were received within the read timeout or this adapter was closed
+     */
+    @Override
+    public byte @NotNull [] read(int count) throws NetworkException {
+        return read(count, readTimeoutNanos, false);
+    }
+
+    @Override
+    public byte @NotNull [] read(int count, long timeoutNanos) throws NetworkException {
+        return read(count, timeoutNanos, true);
+    }
+
+    @Override
+    public void write(byte... data) throws NetworkException {
+        if (data != null) {
+            write(data, 0, data.length);
+        }
+    }
+
+    /**
+     * Queues all frames completed by the written bytes to the links
+     *
+     * @throws NetworkException if this adapter was closed or interrupted while waiting for space in the queues of the
+     *                          links
+     */
+    @Override
+    public void write(byte @NotNull [] data, int offset, int length) throws NetworkException {
+        if (closed) {
+            throw new NetworkException("Adapter is closed");
+        }
+        synchronized (writeLock) {
+            ByteBuffer source = ByteBuffer.wrap(data, offset, length);
+            while (source.hasRemaining()) {
+                int start = source.position();
+                FrameDecoder.Result result = outboundDecoder.decode(source);
+                appendPending(data, start, source.position() - start);
+                if (result != FrameDecoder.Result.INCOMPLETE) {
+                    // corrupt frames are passed on as they are
+                    dispatchPending(result == FrameDecoder.Result.FRAME);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the count of frames queued to each link, in the order the links were passed to the constructor
+     */
+    public long @NotNull [] getSentFrames() {
+        synchronized (writeLock) {
+            long[] sentFrames = new long[links.length];
+            for (int i = 0; i < links.length; i++) {
+                sentFrames[i] = links[i].sentFrames;
+            }
+            return sentFrames;
+        }
+    }
+
+    /**
+     * @return the rate estimated for each link in bytes per second or 0 if no frame of the link was acknowledged yet, in
+     * the order the links were passed to the constructor
+     */
+    public double @NotNull [] getEstimatedRates() {
+        double[] estimatedRates = new double[links.length];
+        for (int i = 0; i < links.length; i++) {
+            estimatedRates[i] = links[i].estimatedRate;
+        }
+        return estimatedRates;
+    }
+
+    /**
+     * @return whether the last write of each link failed, in the order the links were passed to the constructor
+     */
+    public boolean @NotNull [] getFailedLinks() {
+        boolean[] failedLinks = new boolean[links.length];
+        for (int i = 0; i < links.length; i++) {
+            failedLinks[i] = links[i].failed;
+        }
+        return failedLinks;
+    }
+
+    /**
+     * Stops the reader and writer threads. Frames that weren't written yet are discarded. The links are not closed
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Link link : links) {
+            link.reader.interrupt();
+            link.writer.interrupt();
+        }
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+    }
+
+    private byte[] read(int count, long timeoutNanos, boolean partial) throws NetworkException {
+        synchronized (lock) {
+            long deadline = System.nanoTime() + timeoutNanos;
+            while (true) {
+                long now = System.nanoTime();
+                long untilGapExpiry = expireGaps(now);
+                if (availableBytes >= count) {
+                    return take(count);
+                } else if (closed) {
+                    throw new NetworkException("Adapter is closed");
+                }
+                long remaining = deadline - now;
+                if (remaining <= 0 && partial) {
+                    return take(availableBytes);
+                } else if (remaining <= 0) {
+                    throw new NetworkException("No data received within read timeout");
+                }
+                try {
+                    long waitNanos = Math.min(remaining, untilGapExpiry);
+                    lock.wait(waitNanos / 1_000_000L, (int) (waitNanos % 1_000_000L));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new NetworkException("Interrupted while waiting for data", e);
+                }
+            }
+        }
+    }
+
+    private static double[] equalRates(int count) {
+        double[] rates = new double[count];
+        Arrays.fill(rates, 1);
+        return rates;
+    }
+
+    private byte[] take(int count) {
+        byte[] result = new byte[count];
+        int position = 0;
+        while (position < count) {
+            byte[] frame = availableFrames.peek();
+            int copied = Math.min(count - position, frame.length - availablePosition);
+            System.arraycopy(frame, availablePosition, result, position, copied);
+            availablePosition += copied;
+            position += copied;
+            if (availablePosition == frame.length) {
+                availableFrames.poll();
+                availablePosition = 0;
+            }
+        }
+        availableBytes -= count;
+        lock.notifyAll(); // readers of links may wait for space
+        return result;
+    }
+
+    private void appendPending(byte[] data, int offset, int length) {
+        if (pendingLength + length > pendingFrame.length) {
+            pendingFrame = Arrays.copyOf(pendingFrame, Math.max(pendingFrame.length * 2, pendingLength + length));
+        }
+        System.arraycopy(data, offset, pendingFrame, pendingLength, length);
+        pendingLength += length;
+    }
+
+    private void dispatchPending(boolean isFrame) throws NetworkException {
+        byte[] frame = Arrays.copyOf(pendingFrame, pendingLength);
+        pendingLength = 0;
+        int messageId = outboundDecoder.getMessageId() & 0xFF;
+        byte type = outboundDecoder.getType();
+        boolean requiresAck = isFrame && type != Packet.TYPE_ACK && BitUtil.isFlagSet(outboundDecoder.getFlags(), 0);
+        int previousLink = -1;
+        if (requiresAck) {
+            synchronized (lock) {
+                if (sentTypes[messageId] == type) {
+                    previousLink = sentLinks[messageId];
+                }
+                if (previousLink >= 0) {
+                    // not acknowledged yet, so its round trip takes at least the time since it was queued
+                    links[previousLink].measure(sentLengths[messageId], System.nanoTime() - sentTimes[messageId]);
+                }
+            }
+        }
+        updateWeights();
+        Link link = selectLink(previousLink);
+        try {
+            for (int attempt = 1; !link.queue.offer(frame, readTimeoutNanos, TimeUnit.NANOSECONDS); attempt++) {
+                // the link stopped writing, for instance because its write blocks
+                link.failed = true;
+                if (attempt == links.length) {
+                    return; // the frame is lost
+                }
+                link = selectLink(previousLink);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NetworkException("Interrupted while queueing frame", e);
+        }
+        if (requiresAck) {
+            synchronized (lock) {
+                sentLinks[messageId] = link.index;
+                sentTypes[messageId] = type;
+                sentLengths[messageId] = frame.length;
+                sentTimes[messageId] = System.nanoTime();
+            }
+        }
+        link.sentFrames++;
+    }
+
+    /**
+     * Weights links by their estimated rate. Links that weren't measured yet are weighted by their configured rate, scaled
+     * to the estimated rates
+     */
+    private void updateWeights() {
+        double maxRate = 0;
+        double maxEstimatedRate = 0;
+        for (Link link : links) {
+            maxRate = Math.max(maxRate, link.rate);
+            maxEstimatedRate = Math.max(maxEstimatedRate, link.estimatedRate);
+        }
+        double maxWeight = 0;
+        for (Link link : links) {
+            double estimatedRate = link.estimatedRate;
+            if (estimatedRate > 0) {
+                link.weight = estimatedRate;
+            } else if (maxEstimatedRate > 0) {
+                link.weight = maxEstimatedRate * link.rate / maxRate;
+            } else {
+                link.weight = link.rate;
+            }
+            maxWeight = Math.max(maxWeight, link.weight);
+        }
+        double minWeight = maxWeight / MIN_WEIGHT_DIVISOR;
+        for (Link link : links) {
+            link.weight = link.failed ? Math.min(link.weight, minWeight) : Math.max(link.weight, minWeight);
+        }
+    }
+
+    /**
+     * Smooth weighted round-robin, which spreads the choices of each link evenly instead of choosing it in bursts
+     *
+     * @param excludedLink The index of a link not to choose, or -1
+     */
+    private Link selectLink(int excludedLink) {
+        Link selected = selectLink(excludedLink, true);
+        return selected != null ? selected : selectLink(excludedLink, false);
+    }
+
+    /**
+     * @param skipStalled Whether to skip failed links whose queue is full
+     * @return the chosen link or null if all links were skipped
+     */
+    private Link selectLink(int excludedLink, boolean skipStalled) {
+        double totalWeight = 0;
+        Link selected = null;
+        for (Link link : links) {
+            if (link.index == excludedLink && links.length > 1) {
+                continue;
+            } else if (skipStalled && link.failed && link.queue.remainingCapacity() == 0) {
+                continue;
+            }
+            link.currentWeight += link.weight;
+            totalWeight += link.weight;
+            if (selected == null || link.currentWeight > selected.currentWeight) {
+                selected = link;
+            }
+        }
+        if (selected != null) {
+            selected.currentWeight -= totalWeight;
+        }
+        return selected;
+    }
+
+    private void receive(FrameDecoder decoder) throws InterruptedException {
+        byte protocolVersion = decoder.getProtocolVersion();
+        ByteBuffer payload = decoder.getPayload();
+        byte[] frame = new byte[standardEncoder.getHeaderLength(protocolVersion) + payload.remaining()];
+        ByteBuffer target = ByteBuffer.wrap(frame);
+        standardEncoder.encodeHeader(target, protocolVersion, decoder.getMessageId(), decoder.getType(), decoder.getVersion(),
+                decoder.getFlags(), payload.remaining(), policy.getPayloadChecksum(protocolVersion).compute(payload));
+        target.put(payload);
+        int messageId = decoder.getMessageId() & 0xFF;
+        synchronized (lock) {
+            while (availableBytes >= MAX_AVAILABLE_BYTES && !closed) {
+                lock.wait();
+            }
+            if (decoder.getType() == Packet.TYPE_ACK) {
+                if (sentLinks[messageId] >= 0) {
+                    links[sentLinks[messageId]].measure(sentLengths[messageId], System.nanoTime() - sentTimes[messageId]);
+                }
+                sentLinks[messageId] = -1;
+                makeAvailable(frame);
+                return;
+            }
+            int distance = (messageId - nextMessageId) & 0xFF;
+            if (distance == 0) {
+                makeAvailable(frame);
+                nextMessageId = (nextMessageId + 1) & 0xFF;
+                releaseHeldFrames();
+            } else if (distance < MAX_HELD_DISTANCE) {
+                if (heldFrames[messageId] == null) {
+                    heldFrames[messageId] = frame;
+                    heldSince[messageId] = System.nanoTime();
+                    heldCount++;
+                }
+                expireGaps(System.nanoTime());
+            } else {
+                makeAvailable(frame); // already passed, for instance a retransmission
+            }
+        }
+    }
+
+    private void makeAvailable(byte[] frame) {
+        availableFrames.add(frame);
+        availableBytes += frame.length;
+        lock.notifyAll();
+    }
+
+    private void releaseHeldFrames() {
+        while (heldFrames[nextMessageId] != null) {
+            makeAvailable(heldFrames[nextMessageId]);
+            heldFrames[nextMessageId] = null;
+            heldCount--;
+            nextMessageId = (nextMessageId + 1) & 0xFF;
+        }
+    }
+
+    /**
+     * Skips missing frames that held back others for longer than the gap timeout
+     *
+     * @return the nanoseconds until the next gap expires or {@link Long#MAX_VALUE} if no frames are held back
+     */
+    private long expireGaps(long now) {
+        while (heldCount > 0) {
+            int firstHeld = -1;
+            long maxHeldNanos = 0;
+            for (int distance = 1; distance < MAX_HELD_DISTANCE; distance++) {
+                int messageId = (nextMessageId + distance) & 0xFF;
+                if (heldFrames[messageId] != null) {
+                    if (firstHeld < 0) {
+                        firstHeld = messageId;
+                    }
+                    maxHeldNanos = Math.max(maxHeldNanos, now - heldSince[messageId]);
+                }
+            }
+            if (maxHeldNanos < gapTimeoutNanos) {
+                return gapTimeoutNanos - maxHeldNanos;
+            }
+            nextMessageId = firstHeld;
+            releaseHeldFrames();
+        }
+        return Long.MAX_VALUE;
+    }
+
+    private class Link {
+
+        private final int index;
+        private final NetworkAdapter adapter;
+        private final FrameDecoder decoder;
+        private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(MAX_QUEUED_FRAMES);
+        private final Thread reader;
+        private final Thread writer;
+        private final double rate;
+        private volatile boolean failed = false;
+        // in bytes per second, 0 until measured. Guarded by lock
+        private volatile double estimatedRate = 0;
+        // guarded by writeLock
+        private double weight;
+        private double currentWeight = 0;
+        private long sentFrames = 0;
+
+        private Link(int index, NetworkAdapter adapter, double rate) {
+            this.index = index;
+            this.adapter = adapter;
+            this.rate = rate;
+            this.decoder = new FrameDecoder(policy);
+            this.reader = new Thread(this::read, "packeteer-bond-reader-" + index);
+            this.writer = new Thread(this::write, "packeteer-bond-writer-" + index);
+            reader.setDaemon(true);
+            writer.setDaemon(true);
+        }
+
+        private void measure(int frameLength, long roundTripNanos) {
+            double sample = frameLength * 1e9 / Math.max(roundTripNanos, 1);
+            estimatedRate = estimatedRate == 0 ? sample : estimatedRate + ESTIMATE_SMOOTHING * (sample - estimatedRate);
+        }
+
+        private void read() {
+            try {
+                while (!closed) {
+                    long start = System.nanoTime();
+                    byte[] data;
+                    try {
+                        data = adapter.read(decoder.getRequiredBytes());
+                    } catch (NetworkException e) {
+                        // avoid spinning on links that fail without blocking
+                        long remainingDelay = READ_RETRY_DELAY_NANOS - (System.nanoTime() - start);
+                        if (remainingDelay > 0) {
+                            Thread.sleep(remainingDelay / 1_000_000L, (int) (remainingDelay % 1_000_000L));
+                        }
+                        continue;
+                    }
+                    ByteBuffer source = ByteBuffer.wrap(data);
+                    while (source.hasRemaining()) {
+                        if (decoder.decode(source) == FrameDecoder.Result.FRAME) {
+                            receive(decoder);
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                // closed
+            }
+        }
+
+        private void write() {
+            try {
+                while (!closed) {
+                    byte[] frame = queue.take();
+                    try {
+                        adapter.write(frame);
+                        failed = false;
+                    } catch (NetworkException e) {
+                        failed = true;
+                    }
+                }
+            } catch (InterruptedException e) {
+                // closed
+            }
+        }
+    }
+
+}
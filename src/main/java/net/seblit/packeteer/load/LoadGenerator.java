@@ -0,0 +1,351 @@
+package net.seblit.packeteer.load;
+
+import net.seblit.packeteer.BitUtil;
+import net.seblit.packeteer.Client;
+import net.seblit.packeteer.IncomingPacket;
+import net.seblit.packeteer.NetworkException;
+import net.seblit.packeteer.Packet;
+import net.seblit.packeteer.PayloadChecksum;
+import net.seblit.packeteer.ProcessingException;
+import net.seblit.packeteer.ProtocolPolicy;
+import net.seblit.packeteer.sim.LinkProfile;
+import net.seblit.packeteer.sim.LinkSimulator;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives two {@link Client}s connected by a {@link LinkSimulator} and measures sustained throughput and acknowledgement
+ * latency. Client A sends packets from a configurable amount of threads while client B receives and acknowledges them.
+ * Sends that are in progress when the duration elapsed are completed before the results are tallied, so they only count
+ * as failures if they failed on their own.<br>
+ * <br>
+ * Run from the command line with any of the following arguments. Omitted arguments use their defaults
+ * <li>--duration=millis: how long to send packets. Default 10000</li>
+ * <li>--threads=count: amount of sending threads. Default 1</li>
+ * <li>--mix=type:weight,...: packet types to send and their relative frequency. Default 1:1</li>
+ * <li>--payload=min-max: uniform range of payload sizes in bytes. Default 0-256</li>
+ * <li>--ack=ratio: share (0-1) of packets sent with acknowledgement. Default 1</li>
+ * <li>--attempts=count: {@link Client#getMaxSendAttempts()}. Default 3</li>
+ * <li>--checksum=crc16|crc32c: the {@link PayloadChecksum} used for payloads. Default crc16</li>
+ * <li>--bandwidth=bytesPerSecond, --latency=micros, --jitter=micros: link timing. Default unlimited and 0</li>
+ * <li>--drop=rate, --flip=rate, --truncate=rate, --reorder=rate: link impairments. Default 0</li>
+ * <li>--idle=millis: read timeout of the link. Default 100</li>
+ * <li>--seed=seed: seed for link impairments and the packet mix. Default 0</li>
+ */
+public class LoadGenerator {
+
+    private static final byte PROTOCOL_VERSION = 1;
+    private final Settings settings;
+
+    /**
+     * Creates a new instance
+     *
+     * @param settings The {@link Settings} used for all runs
+     */
+    public LoadGenerator(@NotNull Settings settings) {
+        this.settings = settings;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Settings settings = Settings.parse(args);
+        System.out.println(new LoadGenerator(settings).run());
+    }
+
+    /**
+     * Runs the load test for the configured duration. Blocks until finished
+     *
+     * @return the {@link Report} of the run
+     */
+    public @NotNull Report run() throws InterruptedException {
+        LinkSimulator simulator = new LinkSimulator(settings.seed, settings.profile, settings.profile, false, settings.idleTimeoutMillis);
+        ProtocolPolicy policy = protocolVersion -> settings.checksum;
+        AtomicLong receivedPackets = new AtomicLong();
+        Client sender = new Client(PROTOCOL_VERSION, settings.maxSendAttempts, simulator.getEndpointA(),
+                (protocolVersion, type, version, flags) -> {
+                    throw new ProcessingException("Sender does not expect packets");
+                }, policy);
+        Client receiver = new Client(PROTOCOL_VERSION, settings.maxSendAttempts, simulator.getEndpointB(),
+                (protocolVersion, type, version, flags) -> new IncomingPacket(type, version, flags) {
+                    @Override
+                    public void process(byte @Nullable ... payload) {
+                        receivedPackets.incrementAndGet();
+                    }
+                }, policy);
+
+        long start = System.nanoTime();
+        long deadline = start + settings.durationMillis * 1_000_000L;
+        AtomicBoolean sendersFinished = new AtomicBoolean();
+        Thread receiverThread = new Thread(() -> {
+            // keeps acknowledging until sends in progress at the deadline completed
+            while (!sendersFinished.get()) {
+                try {
+                    receiver.receive();
+                } catch (NetworkException | ProcessingException ignored) {
+                    // read timeouts and corrupted packets are expected on impaired links
+                }
+            }
+        }, "load-receiver");
+        receiverThread.start();
+        List<SenderTask> tasks = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < settings.threads; i++) {
+            SenderTask task = new SenderTask(sender, new Random(settings.seed + i), deadline);
+            Thread thread = new Thread(task, "load-sender-" + i);
+            tasks.add(task);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        sendersFinished.set(true);
+        receiverThread.join();
+
+        long sentPackets = 0;
+        long sentBytes = 0;
+        long failures = 0;
+        int latencyCount = 0;
+        for (SenderTask task : tasks) {
+            sentPackets += task.sentPackets;
+            sentBytes += task.sentBytes;
+            failures += task.failures;
+            latencyCount += task.latencyCount;
+        }
+        long[] latencies = new long[latencyCount];
+        int position = 0;
+        for (SenderTask task : tasks) {
+            System.arraycopy(task.latencies, 0, latencies, position, task.latencyCount);
+            position += task.latencyCount;
+        }
+        Arrays.sort(latencies);
+        return new Report(elapsed, sentPackets, sentBytes, receivedPackets.get(), failures, sender.getRetransmissionCount(),
+                percentile(latencies, 0.5), percentile(latencies, 0.99), percentile(latencies, 0.999));
+    }
+
+    private static long percentile(long[] sortedValues, double percentile) {
+        if (sortedValues.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile * sortedValues.length);
+        return sortedValues[Math.max(rank - 1, 0)];
+    }
+
+    private class SenderTask implements Runnable {
+
+        private final Client client;
+        private final Random random;
+        private final long deadline;
+        private final byte[][] payloads;
+        private long[] latencies = new long[1024];
+        private int latencyCount = 0;
+        private long sentPackets = 0;
+        private long sentBytes = 0;
+        private long failures = 0;
+
+        private SenderTask(Client client, Random random, long deadline) {
+            this.client = client;
+            this.random = random;
+            this.deadline = deadline;
+            // payload contents don't matter for the measurement, so one buffer per size avoids allocation during the run
+            this.payloads = new byte[settings.payloadMax + 1][];
+        }
+
+        @Override
+        public void run() {
+            while (System.nanoTime() < deadline) {
+                boolean requiresAck = random.nextDouble() < settings.ackRatio;
+                Packet packet = new Packet(nextType(), (byte) 1, (byte) (requiresAck ? BitUtil.createFlags(0) : BitUtil.createFlags()));
+                byte[] payload = nextPayload();
+                long sendStart = System.nanoTime();
+                try {
+                    client.send(packet, payload);
+                    sentPackets++;
+                    sentBytes += payload.length;
+                    if (requiresAck) {
+                        recordLatency(System.nanoTime() - sendStart);
+                    }
+                } catch (NetworkException error) {
+                    // timeouts, failure acknowledgements and link errors all count as failed sends
+                    failures++;
+                }
+            }
+        }
+
+        private byte nextType() {
+            int pick = random.nextInt(settings.totalWeight);
+            int index = 0;
+            while (pick >= settings.weights[index]) {
+                pick -= settings.weights[index];
+                index++;
+            }
+            return settings.types[index];
+        }
+
+        private byte[] nextPayload() {
+            int size = settings.payloadMin + random.nextInt(settings.payloadMax - settings.payloadMin + 1);
+            if (payloads[size] == null) {
+                payloads[size] = new byte[size];
+                random.nextBytes(payloads[size]);
+            }
+            return payloads[size];
+        }
+
+        private void recordLatency(long nanos) {
+            if (latencyCount == latencies.length) {
+                latencies = Arrays.copyOf(latencies, latencies.length * 2);
+            }
+            latencies[latencyCount++] = nanos;
+        }
+    }
+
+    /**
+     * Configuration of a {@link LoadGenerator} run. See {@link LoadGenerator} for the meaning and defaults of each value
+     */
+    public static class Settings {
+
+        private long durationMillis = 10_000;
+        private int threads = 1;
+        private byte[] types = {1};
+        private int[] weights = {1};
+        private int totalWeight = 1;
+        private int payloadMin = 0;
+        private int payloadMax = 256;
+        private double ackRatio = 1;
+        private int maxSendAttempts = 3;
+        private PayloadChecksum checksum = PayloadChecksum.CRC16;
+        private LinkProfile profile = LinkProfile.PERFECT;
+        private long idleTimeoutMillis = 100;
+        private long seed = 0;
+
+        /**
+         * Creates settings from command line arguments as described by {@link LoadGenerator}
+         *
+         * @param args The arguments in form of --key=value
+         * @return the parsed settings
+         * @throws IllegalArgumentException if any argument is unknown or malformed
+         */
+        public static @NotNull Settings parse(String @NotNull ... args) {
+            Settings settings = new Settings();
+            long bandwidth = 0;
+            long latencyMicros = 0;
+            long jitterMicros = 0;
+            double drop = 0;
+            double flip = 0;
+            double truncate = 0;
+            double reorder = 0;
+            for (String arg : args) {
+                int separator = arg.indexOf('=');
+                if (!arg.startsWith("--") || separator < 0) {
+                    throw new IllegalArgumentException("Expected argument in form of --key=value but was " + arg);
+                }
+                String key = arg.substring(2, separator);
+                String value = arg.substring(separator + 1);
+                switch (key) {
+                    case "duration" -> settings.durationMillis = Long.parseLong(value);
+                    case "threads" -> settings.threads = Integer.parseInt(value);
+                    case "mix" -> settings.parseMix(value);
+                    case "payload" -> settings.parsePayload(value);
+                    case "ack" -> settings.ackRatio = Double.parseDouble(value);
+                    case "attempts" -> settings.maxSendAttempts = Integer.parseInt(value);
+                    case "checksum" -> settings.checksum = switch (value) {
+                        case "crc16" -> PayloadChecksum.CRC16;
+                        case "crc32c" -> PayloadChecksum.CRC32C;
+                        default -> throw new IllegalArgumentException("Unknown checksum " + value);
+                    };
+                    case "bandwidth" -> bandwidth = Long.parseLong(value);
+                    case "latency" -> latencyMicros = Long.parseLong(value);
+                    case "jitter" -> jitterMicros = Long.parseLong(value);
+                    case "drop" -> drop = Double.parseDouble(value);
+                    case "flip" -> flip = Double.parseDouble(value);
+                    case "truncate" -> truncate = Double.parseDouble(value);
+                    case "reorder" -> reorder = Double.parseDouble(value);
+                    case "idle" -> settings.idleTimeoutMillis = Long.parseLong(value);
+                    case "seed" -> settings.seed = Long.parseLong(value);
+                    default -> throw new IllegalArgumentException("Unknown argument " + key);
+                }
+            }
+            settings.profile = new LinkProfile(bandwidth, latencyMicros * 1000, jitterMicros * 1000, drop, flip, truncate, reorder);
+            return settings;
+        }
+
+        private void parseMix(String value) {
+            String[] entries = value.split(",");
+            types = new byte[entries.length];
+            weights = new int[entries.length];
+            totalWeight = 0;
+            for (int i = 0; i < entries.length; i++) {
+                String[] entry = entries[i].split(":");
+                types[i] = (byte) Integer.parseInt(entry[0]);
+                weights[i] = entry.length > 1 ? Integer.parseInt(entry[1]) : 1;
+                if (types[i] == Packet.TYPE_ACK || weights[i] <= 0) {
+                    throw new IllegalArgumentException("Packet types must not be " + Packet.TYPE_ACK + " and weights must be positive");
+                }
+                totalWeight += weights[i];
+            }
+        }
+
+        private void parsePayload(String value) {
+            String[] range = value.split("-");
+            payloadMin = Integer.parseInt(range[0]);
+            payloadMax = range.length > 1 ? Integer.parseInt(range[1]) : payloadMin;
+            if (payloadMin < 0 || payloadMax < payloadMin || payloadMax > 0xFFFF) {
+                throw new IllegalArgumentException("Payload range must be within 0-65535");
+            }
+        }
+    }
+
+    /**
+     * The results of a {@link LoadGenerator} run
+     *
+     * @param elapsedNanos     The duration of the run, including completing the sends in progress at its end
+     * @param sentPackets      Count of packets sent successfully
+     * @param sentBytes        Count of payload bytes sent successfully
+     * @param receivedPackets  Count of packets processed by the receiver, including duplicates caused by resends
+     * @param failures         Count of packets that failed to send
+     * @param retransmissions  Count of transmissions resent due to missing acknowledgement
+     * @param ackLatencyP50    Median time in nanoseconds for a packet with acknowledgement to be sent
+     * @param ackLatencyP99    99th percentile of the acknowledgement latency in nanoseconds
+     * @param ackLatencyP999   99.9th percentile of the acknowledgement latency in nanoseconds
+     */
+    public record Report(long elapsedNanos, long sentPackets, long sentBytes, long receivedPackets, long failures,
+                         long retransmissions, long ackLatencyP50, long ackLatencyP99, long ackLatencyP999) {
+
+        /**
+         * @return the sustained rate of successfully sent packets per second
+         */
+        public double packetsPerSecond() {
+            return sentPackets * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * @return the sustained rate of successfully sent payload bytes per second
+         */
+        public double bytesPerSecond() {
+            return sentBytes * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("""
+                            duration:        %.1f s
+                            packets/s:       %.1f
+                            bytes/s:         %.1f
+                            sent:            %d packets, %d bytes
+                            received:        %d packets
+                            failures:        %d
+                            retransmissions: %d
+                            ack latency:     p50 %.1f us, p99 %.1f us, p999 %.1f us""",
+                    elapsedNanos / 1e9, packetsPerSecond(), bytesPerSecond(), sentPackets, sentBytes, receivedPackets,
+                    failures, retransmissions, ackLatencyP50 / 1e3, ackLatencyP99 / 1e3, ackLatencyP999 / 1e3);
+        }
+    }
+
+}
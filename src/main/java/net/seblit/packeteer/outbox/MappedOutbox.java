@@ -0,0 +1,360 @@
+package net.seblit.packeteer.outbox;
+
+import net.seblit.packeteer.Client;
+import net.seblit.packeteer.NetworkException;
+import net.seblit.packeteer.Packet;
+import net.seblit.packeteer.PacketFailureException;
+import net.seblit.packeteer.PayloadChecksum;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * A write-ahead outbox for packets that require acknowledgement. Before such a packet is sent, it is appended to a
+ * memory-mapped segment file and marked done once the transmission completed. Entries that weren't completed, for
+ * instance because the process terminated or the send timed out, can be sent again with {@link #replay(Client)} after
+ * the outbox was reopened on the same directory.<br>
+ * <br>
+ * <h1>Durability</h1>
+ * Appending and marking are plain writes to mapped memory. The operating system writes them back to the files on its
+ * own, so they survive termination of the process but not necessarily a power loss. Call {@link #force()} to write
+ * them back immediately.
+ * <h1>Segments</h1>
+ * Entries are appended to fixed size segment files. A new segment is started when an entry doesn't fit into the
+ * current one and on every opening of the outbox. Segments are deleted once all their entries are done.
+ * Each entry is structured as follows
+ * <li>Status: 0 for end of segment, 1 for pending and 2 for done. Written last when appending</li>
+ * <li>CRC32C checksum of all following bytes of the entry, from low to high</li>
+ * <li>Low, then high byte of the 16-bit payload length</li>
+ * <li>{@link Packet#getType()}, {@link Packet#getVersion()} and {@link Packet#getFlags()}</li>
+ * <li>Payload</li>
+ * When reopening, an entry with invalid status or checksum is considered the end of its segment.
+ * <h1>Delivery</h1>
+ * Replayed packets may have been received before the process terminated without their acknowledgement arriving, so
+ * receivers must tolerate duplicates.<br>
+ * Instances are thread safe. Each directory may only be used by one instance at a time.
+ */
+public class MappedOutbox implements Closeable {
+
+    /**
+     * The segment size used by {@link #MappedOutbox(Path)}
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+    private static final int MAX_PAYLOAD_LENGTH = 0xFFFF;
+    private static final int ENTRY_HEADER_SIZE = 10;
+    private static final int CHECKSUM_OFFSET = 1;
+    private static final int LENGTH_OFFSET = 5;
+    private static final int PACKET_OFFSET = 7;
+    private static final byte STATUS_PENDING = 1;
+    private static final byte STATUS_DONE = 2;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".outbox";
+    private final Path directory;
+    private final int segmentSize;
+    private final LinkedHashSet<Entry> pending = new LinkedHashSet<>();
+    private Segment activeSegment;
+    private long nextSequence = 0;
+    private boolean closed = false;
+
+    /**
+     * Opens an outbox with segments of {@link #DEFAULT_SEGMENT_SIZE} bytes
+     *
+     * @param directory The directory containing the segment files. Created if it doesn't exist
+     * @throws IOException if the directory or existing segments couldn't be accessed
+     */
+    public MappedOutbox(@NotNull Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Opens an outbox and recovers pending entries from existing segments
+     *
+     * @param directory   The directory containing the segment files. Created if it doesn't exist
+     * @param segmentSize The size of new segment files in bytes. Must fit at least one entry with a 64Kib payload
+     * @throws IOException              if the directory or existing segments couldn't be accessed
+     * @throws IllegalArgumentException if the segment size is too small
+     */
+    public MappedOutbox(@NotNull Path directory, int segmentSize) throws IOException {
+        if (segmentSize < ENTRY_HEADER_SIZE + MAX_PAYLOAD_LENGTH + 1) {
+            throw new IllegalArgumentException("Segment size must be at least " + (ENTRY_HEADER_SIZE + MAX_PAYLOAD_LENGTH + 1) + " bytes");
+        }
+        this.directory = Files.createDirectories(directory);
+        this.segmentSize = segmentSize;
+        recover();
+        activeSegment = createSegment();
+    }
+
+    /**
+     * Sends a packet via the client. If the packet requires acknowledgement (flag 0), it is appended to the outbox
+     * first. The entry is marked done if the packet was acknowledged or the receiver reported a processing failure.
+     * On any other exception it remains pending and will be sent again by {@link #replay(Client)}.
+     *
+     * @param client  The {@link Client} to send with
+     * @param packet  The Packet to transmit
+     * @param payload Optional, the payload to transmit. May not be larger than {@link Client#getMaxPayloadLength(byte)}
+     * @return the messageId that was generated for this transmission
+     * @throws NetworkException         if thrown by {@link Client#send(Packet, byte...)}
+     * @throws IOException              if a new segment couldn't be created
+     * @throws IllegalArgumentException if the payload is too large for the client. Nothing is appended then
+     */
+    public byte send(@NotNull Client client, @NotNull Packet packet, byte @Nullable ... payload) throws NetworkException, IOException {
+        if (!packet.isFlagSet(0)) {
+            return client.send(packet, payload);
+        }
+        Entry entry = append(packet, payload, client.getMaxPayloadLength(packet.getType()));
+        return send(client, packet, payload != null ? ByteBuffer.wrap(payload) : ByteBuffer.allocate(0), entry);
+    }
+
+    /**
+     * Sends all pending entries that are not currently being sent, in the order they were appended. Entries whose
+     * receiver reported a processing failure or that the client rejects as invalid, for instance because their payload is
+     * too large for a delta encoded type, are marked done, as sending them again can't succeed.
+     *
+     * @param client The {@link Client} to send with
+     * @return the count of entries that were acknowledged
+     * @throws NetworkException if an entry couldn't be sent for any other reason than a processing failure. The entry
+     *                          and all following remain pending
+     */
+    public int replay(@NotNull Client client) throws NetworkException {
+        int acknowledged = 0;
+        Entry entry;
+        while ((entry = claimNext()) != null) {
+            ByteBuffer payload = entry.segment.buffer.slice(entry.offset + ENTRY_HEADER_SIZE, entry.payloadLength);
+            try {
+                send(client, new Packet(entry.type, entry.version, entry.flags), payload, entry);
+                acknowledged++;
+            } catch (PacketFailureException | IllegalArgumentException ignored) {
+                // rejected by the receiver or the client, already marked done
+            }
+        }
+        return acknowledged;
+    }
+
+    /**
+     * @return the count of entries that are not done, including those currently being sent
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Writes all changes of the current segment back to its file and waits until this completed. Changes to previous
+     * segments are only marks, which are written back by the operating system
+     */
+    public synchronized void force() {
+        ensureOpen();
+        activeSegment.buffer.force();
+    }
+
+    /**
+     * Closes the outbox. Pending entries remain in their segments and are recovered when the directory is opened again
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        pending.clear();
+        deleteIfDone(activeSegment);
+        activeSegment = null;
+    }
+
+    private byte send(Client client, Packet packet, ByteBuffer payload, Entry entry) throws NetworkException {
+        boolean done = false;
+        try {
+            byte messageId = client.sendBuffer(packet, payload);
+            done = true;
+            return messageId;
+        } catch (PacketFailureException | IllegalArgumentException error) {
+            done = true;
+            throw error;
+        } finally {
+            complete(entry, done);
+        }
+    }
+
+    private synchronized Entry append(Packet packet, byte[] payload, int maxPayloadLength) throws IOException {
+        ensureOpen();
+        int payloadLength = payload != null ? payload.length : 0;
+        if (payloadLength > maxPayloadLength) {
+            throw new IllegalArgumentException("Payload may not be larger than " + maxPayloadLength + " bytes");
+        }
+        // one byte is kept free, so every segment ends with a status 0
+        if (activeSegment.position + ENTRY_HEADER_SIZE + payloadLength >= segmentSize) {
+            Segment previous = activeSegment;
+            activeSegment = createSegment();
+            deleteIfDone(previous);
+        }
+        MappedByteBuffer buffer = activeSegment.buffer;
+        int offset = activeSegment.position;
+        buffer.putShort(offset + LENGTH_OFFSET, (short) payloadLength)
+                .put(offset + PACKET_OFFSET, packet.getType())
+                .put(offset + PACKET_OFFSET + 1, packet.getVersion())
+                .put(offset + PACKET_OFFSET + 2, packet.getFlags());
+        if (payloadLength > 0) {
+            buffer.put(offset + ENTRY_HEADER_SIZE, payload);
+        }
+        int checksum = PayloadChecksum.CRC32C.compute(buffer.slice(offset + LENGTH_OFFSET, ENTRY_HEADER_SIZE - LENGTH_OFFSET + payloadLength));
+        buffer.putInt(offset + CHECKSUM_OFFSET, checksum).put(offset, STATUS_PENDING);
+        activeSegment.position += ENTRY_HEADER_SIZE + payloadLength;
+        Entry entry = new Entry(activeSegment, offset, packet.getType(), packet.getVersion(), packet.getFlags(), payloadLength);
+        entry.inFlight = true;
+        activeSegment.pendingCount++;
+        pending.add(entry);
+        return entry;
+    }
+
+    private synchronized Entry claimNext() {
+        ensureOpen();
+        for (Entry entry : pending) {
+            if (!entry.inFlight) {
+                entry.inFlight = true;
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private synchronized void complete(Entry entry, boolean done) {
+        entry.inFlight = false;
+        if (!done || closed || !pending.remove(entry)) {
+            return;
+        }
+        entry.segment.buffer.put(entry.offset, STATUS_DONE);
+        entry.segment.pendingCount--;
+        if (entry.segment != activeSegment) {
+            deleteIfDone(entry.segment);
+        }
+    }
+
+    private void recover() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(file -> {
+                if (parseSequence(file) >= 0) {
+                    files.add(file);
+                }
+            });
+        }
+        files.sort((first, second) -> Long.compare(parseSequence(first), parseSequence(second)));
+        for (Path file : files) {
+            nextSequence = Math.max(nextSequence, parseSequence(file) + 1);
+            Segment segment = new Segment(file, map(file, Files.size(file), false));
+            recover(segment);
+            deleteIfDone(segment);
+        }
+    }
+
+    private void recover(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer;
+        int offset = 0;
+        while (offset + ENTRY_HEADER_SIZE <= buffer.limit()) {
+            byte status = buffer.get(offset);
+            int payloadLength = buffer.getShort(offset + LENGTH_OFFSET) & 0xFFFF;
+            if ((status != STATUS_PENDING && status != STATUS_DONE) || offset + ENTRY_HEADER_SIZE + payloadLength > buffer.limit()) {
+                break;
+            }
+            int checksum = PayloadChecksum.CRC32C.compute(buffer.slice(offset + LENGTH_OFFSET, ENTRY_HEADER_SIZE - LENGTH_OFFSET + payloadLength));
+            if (checksum != buffer.getInt(offset + CHECKSUM_OFFSET)) {
+                break; // torn append, nothing valid follows
+            }
+            if (status == STATUS_PENDING) {
+                pending.add(new Entry(segment, offset, buffer.get(offset + PACKET_OFFSET), buffer.get(offset + PACKET_OFFSET + 1),
+                        buffer.get(offset + PACKET_OFFSET + 2), payloadLength));
+                segment.pendingCount++;
+            }
+            offset += ENTRY_HEADER_SIZE + payloadLength;
+        }
+    }
+
+    private Segment createSegment() throws IOException {
+        Path file = directory.resolve(SEGMENT_PREFIX + nextSequence++ + SEGMENT_SUFFIX);
+        return new Segment(file, map(file, segmentSize, true));
+    }
+
+    private void deleteIfDone(Segment segment) {
+        if (segment.pendingCount > 0) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(segment.file);
+        } catch (IOException ignored) {
+            // segment only contains done entries and will be deleted again when reopening
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Outbox is closed");
+        }
+    }
+
+    private static MappedByteBuffer map(Path file, long size, boolean create) throws IOException {
+        StandardOpenOption[] options = create
+                ? new StandardOpenOption[]{StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE}
+                : new StandardOpenOption[]{StandardOpenOption.READ, StandardOpenOption.WRITE};
+        // the mapping remains valid after the channel was closed
+        try (FileChannel channel = FileChannel.open(file, options)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return buffer;
+        }
+    }
+
+    private static long parseSequence(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException error) {
+            return -1;
+        }
+    }
+
+    private static final class Segment {
+
+        private final Path file;
+        private final MappedByteBuffer buffer;
+        private int position = 0;
+        private int pendingCount = 0;
+
+        private Segment(Path file, MappedByteBuffer buffer) {
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+
+    private static final class Entry {
+
+        private final Segment segment;
+        private final int offset;
+        private final byte type;
+        private final byte version;
+        private final byte flags;
+        private final int payloadLength;
+        private boolean inFlight = false;
+
+        private Entry(Segment segment, int offset, byte type, byte version, byte flags, int payloadLength) {
+            this.segment = segment;
+            this.offset = offset;
+            this.type = type;
+            this.version = version;
+            this.flags = flags;
+            this.payloadLength = payloadLength;
+        }
+    }
+
+}
@@ -0,0 +1,203 @@
+package net.seblit.packeteer.processor;
+
+import net.seblit.packeteer.IncomingPacket;
+import net.seblit.packeteer.Packet;
+import net.seblit.packeteer.PacketFactory;
+import net.seblit.packeteer.ProcessingException;
+import net.seblit.packeteer.RegisterPacket;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Generated;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Generates switch based {@link PacketFactory} implementations for classes annotated with {@link RegisterPacket}.
+ * Violations of the requirements listed by {@link RegisterPacket} are reported as compilation errors.<br>
+ * <br>
+ * The processor is registered as service and needs no configuration besides being on the processor path.
+ */
+@SupportedAnnotationTypes("net.seblit.packeteer.RegisterPacket")
+public class PacketFactoryProcessor extends AbstractProcessor {
+
+    private final Set<String> generatedFactories = new HashSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Map<String, Map<Integer, Map<Integer, Registration>>> factories = new TreeMap<>();
+        for (Element element : roundEnv.getElementsAnnotatedWith(RegisterPacket.class)) {
+            Registration registration = validate(element);
+            if (registration == null) {
+                continue;
+            }
+            Map<Integer, Registration> versions = factories.computeIfAbsent(registration.factoryName, name -> new TreeMap<>())
+                    .computeIfAbsent(registration.type, type -> new TreeMap<>());
+            Registration existing = versions.putIfAbsent(registration.version, registration);
+            if (existing != null) {
+                error(element, "Type " + registration.type + " version " + registration.version + " is already registered by "
+                        + existing.className + " in " + registration.factoryName);
+            }
+        }
+        for (Map.Entry<String, Map<Integer, Map<Integer, Registration>>> factory : factories.entrySet()) {
+            if (!generatedFactories.add(factory.getKey())) {
+                Registration registration = factory.getValue().values().iterator().next().values().iterator().next();
+                error(registration.element, "Packets of " + factory.getKey() + " must be registered within a single compilation round");
+                continue;
+            }
+            write(factory.getKey(), factory.getValue());
+        }
+        return true;
+    }
+
+    private Registration validate(Element element) {
+        if (element.getKind() != ElementKind.CLASS) {
+            error(element, "@RegisterPacket may only annotate classes");
+            return null;
+        }
+        TypeElement type = (TypeElement) element;
+        RegisterPacket annotation = type.getAnnotation(RegisterPacket.class);
+        boolean valid = true;
+        if (annotation.type() == Packet.TYPE_ACK) {
+            error(element, "Type " + Packet.TYPE_ACK + " is reserved for acknowledgements");
+            valid = false;
+        }
+        if (!SourceVersion.isIdentifier(annotation.factory()) || SourceVersion.isKeyword(annotation.factory())) {
+            error(element, "Factory name " + annotation.factory() + " is not a valid class name");
+            valid = false;
+        }
+        TypeMirror incomingPacket = processingEnv.getElementUtils().getTypeElement(IncomingPacket.class.getCanonicalName()).asType();
+        if (!processingEnv.getTypeUtils().isSubtype(processingEnv.getTypeUtils().erasure(type.asType()), incomingPacket)) {
+            error(element, "Registered packets must extend " + IncomingPacket.class.getSimpleName());
+            valid = false;
+        }
+        if (type.getModifiers().contains(Modifier.ABSTRACT)) {
+            error(element, "Registered packets may not be abstract");
+            valid = false;
+        }
+        if (!type.getTypeParameters().isEmpty()) {
+            error(element, "Registered packets may not declare type parameters");
+            valid = false;
+        }
+        if (type.getNestingKind() == NestingKind.LOCAL || type.getNestingKind() == NestingKind.ANONYMOUS) {
+            error(element, "Registered packets may not be local classes");
+            return null;
+        }
+        for (Element enclosing = type; enclosing.getKind() != ElementKind.PACKAGE; enclosing = enclosing.getEnclosingElement()) {
+            if (enclosing.getModifiers().contains(Modifier.PRIVATE)) {
+                error(element, "Registered packets must be accessible from their package");
+                valid = false;
+                break;
+            }
+            if (isInnerClass(enclosing)) {
+                error(element, "Nested registered packets must be static");
+                valid = false;
+                break;
+            }
+        }
+        Boolean fullConstructor = findConstructor(type);
+        if (fullConstructor == null) {
+            error(element, "Registered packets must declare a non-private constructor taking (byte flags) or (byte type, byte version, byte flags)");
+            valid = false;
+        }
+        if (!valid) {
+            return null;
+        }
+        String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        String factoryName = packageName.isEmpty() ? annotation.factory() : packageName + "." + annotation.factory();
+        return new Registration(element, factoryName, type.getQualifiedName().toString(),
+                annotation.type() & 0xFF, annotation.version() & 0xFF, fullConstructor);
+    }
+
+    private static boolean isInnerClass(Element element) {
+        ElementKind enclosingKind = element.getEnclosingElement().getKind();
+        return element.getKind() == ElementKind.CLASS && ((TypeElement) element).getNestingKind() == NestingKind.MEMBER
+                && enclosingKind != ElementKind.INTERFACE && enclosingKind != ElementKind.ANNOTATION_TYPE
+                && !element.getModifiers().contains(Modifier.STATIC);
+    }
+
+    /**
+     * @return false if a (byte flags) constructor exists, true if only a (byte type, byte version, byte flags)
+     * constructor exists or null if neither does
+     */
+    private static Boolean findConstructor(TypeElement type) {
+        Boolean result = null;
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getModifiers().contains(Modifier.PRIVATE) || constructor.getParameters().stream()
+                    .anyMatch(parameter -> parameter.asType().getKind() != TypeKind.BYTE)) {
+                continue;
+            }
+            if (constructor.getParameters().size() == 1) {
+                return false;
+            } else if (constructor.getParameters().size() == 3) {
+                result = true;
+            }
+        }
+        return result;
+    }
+
+    private void write(String factoryName, Map<Integer, Map<Integer, Registration>> types) {
+        int separator = factoryName.lastIndexOf('.');
+        String packageName = separator >= 0 ? factoryName.substring(0, separator) : "";
+        String simpleName = factoryName.substring(separator + 1);
+        List<Element> originatingElements = new ArrayList<>();
+        types.values().forEach(versions -> versions.values().forEach(registration -> originatingElements.add(registration.element)));
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(factoryName, originatingElements.toArray(new Element[0]));
+            try (Writer writer = file.openWriter()) {
+                if (!packageName.isEmpty()) {
+                    writer.write("package " + packageName + ";\n\n");
+                }
+                writer.write("@" + Generated.class.getCanonicalName() + "(\"" + PacketFactoryProcessor.class.getCanonicalName() + "\")\n");
+                writer.write("public final class " + simpleName + " implements " + PacketFactory.class.getCanonicalName() + " {\n\n");
+                writer.write("    @Override\n");
+                writer.write("    public " + IncomingPacket.class.getCanonicalName() + " create(byte protocolVersion, byte type, byte version, byte flags) throws "
+                        + ProcessingException.class.getCanonicalName() + " {\n");
+                writer.write("        switch (type) {\n");
+                for (Map.Entry<Integer, Map<Integer, Registration>> type : types.entrySet()) {
+                    writer.write("            case " + (byte) (int) type.getKey() + " -> {\n");
+                    writer.write("                switch (version) {\n");
+                    for (Map.Entry<Integer, Registration> version : type.getValue().entrySet()) {
+                        Registration registration = version.getValue();
+                        String arguments = registration.fullConstructor ? "type, version, flags" : "flags";
+                        writer.write("                    case " + (byte) (int) version.getKey() + " -> {\n");
+                        writer.write("                        return new " + registration.className + "(" + arguments + ");\n");
+                        writer.write("                    }\n");
+                    }
+                    writer.write("                }\n");
+                    writer.write("            }\n");
+                }
+                writer.write("        }\n");
+                writer.write("        throw new " + ProcessingException.class.getCanonicalName()
+                        + "(\"Unknown packet type \" + type + \" version \" + version);\n");
+                writer.write("    }\n\n");
+                writer.write("}\n");
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Failed to generate " + factoryName + ": " + e.getMessage());
+        }
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    private record Registration(Element element, String factoryName, String className, int type, int version,
+                                boolean fullConstructor) {
+    }
+
+}
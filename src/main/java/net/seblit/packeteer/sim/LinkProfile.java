@@ -0,0 +1,39 @@
+package net.seblit.packeteer.sim;
+
+/**
+ * Describes the characteristics of one direction of a link simulated by {@link LinkSimulator}
+ *
+ * @param bytesPerSecond  The bandwidth of the link. 0 for unlimited bandwidth
+ * @param latencyNanos    The constant delay added to every write before it becomes readable
+ * @param jitterNanos     The upper bound of a random delay added on top of the latency
+ * @param byteDropRate    The probability (0-1) of each written byte to be lost
+ * @param bitFlipRate     The probability (0-1) of each written byte to have one random bit flipped
+ * @param truncationRate  The probability (0-1) of each write to be cut off at a random position
+ * @param reorderRate     The probability (0-1) of each write to be delivered independent of previous writes, allowing it
+ *                        to overtake them if its jitter is lower. Otherwise writes arrive in order
+ */
+public record LinkProfile(long bytesPerSecond, long latencyNanos, long jitterNanos,
+                          double byteDropRate, double bitFlipRate, double truncationRate, double reorderRate) {
+
+    /**
+     * A link without any bandwidth limit, delay or data loss
+     */
+    public static final LinkProfile PERFECT = new LinkProfile(0, 0, 0, 0, 0, 0, 0);
+
+    public LinkProfile {
+        if (bytesPerSecond < 0 || latencyNanos < 0 || jitterNanos < 0) {
+            throw new IllegalArgumentException("Bandwidth, latency and jitter may not be negative");
+        }
+        checkRate(byteDropRate);
+        checkRate(bitFlipRate);
+        checkRate(truncationRate);
+        checkRate(reorderRate);
+    }
+
+    private static void checkRate(double rate) {
+        if (rate < 0 || rate > 1) {
+            throw new IllegalArgumentException("Rates must be within 0 and 1");
+        }
+    }
+
+}
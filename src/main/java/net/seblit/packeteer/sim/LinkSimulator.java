@@ -0,0 +1,326 @@
+package net.seblit.packeteer.sim;
+
+import net.seblit.packeteer.NetworkAdapter;
+import net.seblit.packeteer.NetworkException;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayDeque;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * An in-memory link between two {@link NetworkAdapter} endpoints that simulates bandwidth, latency, jitter and data
+ * corruption. All impairments are derived from a seeded {@link Random} per direction, so the same sequence of writes
+ * always results in the same sequence of delivered bytes.<br>
+ * <br>
+ * <h1>Time</h1>
+ * In real time mode, reads block until written data would have arrived on a physical link. In virtual time mode, the
+ * simulator keeps its own clock instead and advances it whenever a reader waits for data in flight. This allows
+ * running long transmissions on slow links within milliseconds.<br>
+ * If a reader waits for data while nothing is in flight, it waits up to the idle timeout in real time for the other
+ * endpoint to write. Afterwards a {@link NetworkException} is thrown to simulate a read timeout. In virtual time mode
+ * the clock is advanced by the idle timeout in this case.<br>
+ * Reads with timeout return the bytes that arrived until the timeout or the idle timeout elapsed in real time,
+ * whichever is shorter, instead of throwing. In virtual time mode, data in flight always arrives without real time
+ * passing.
+ * <h1>Impairments</h1>
+ * Impairments are applied per write in the following order
+ * <li>Truncation: the write is cut off at a random position</li>
+ * <li>Byte drop: each remaining byte may be lost</li>
+ * <li>Bit flip: each remaining byte may have one random bit flipped</li>
+ * <li>Reordering: the write may overtake previous writes that are still in flight</li>
+ */
+public class LinkSimulator {
+
+    private static final long SEED_SCRAMBLE = 0x5DEECE66DL;
+    private final Object lock = new Object();
+    private final boolean virtualTime;
+    private final long idleTimeoutNanos;
+    private final long startNanos = System.nanoTime();
+    private final Direction aToB;
+    private final Direction bToA;
+    private final NetworkAdapter endpointA;
+    private final NetworkAdapter endpointB;
+    private long virtualNanos = 0;
+    private long chunkSequence = 0;
+
+    /**
+     * Creates a new symmetric link running in virtual time
+     *
+     * @param seed              The seed used for all random impairments
+     * @param profile           The {@link LinkProfile} used for both directions
+     * @param idleTimeoutMillis Maximum real time in milliseconds a read waits for the other endpoint to write
+     */
+    public LinkSimulator(long seed, @NotNull LinkProfile profile, long idleTimeoutMillis) {
+        this(seed, profile, profile, true, idleTimeoutMillis);
+    }
+
+    /**
+     * Creates a new link
+     *
+     * @param seed              The seed used for all random impairments
+     * @param aToB              The {@link LinkProfile} for data written by endpoint A
+     * @param bToA              The {@link LinkProfile} for data written by endpoint B
+     * @param virtualTime       Whether to use a virtual clock (true) or real time (false)
+     * @param idleTimeoutMillis Maximum real time in milliseconds a read waits for the other endpoint to write
+     */
+    public LinkSimulator(long seed, @NotNull LinkProfile aToB, @NotNull LinkProfile bToA, boolean virtualTime, long idleTimeoutMillis) {
+        this.virtualTime = virtualTime;
+        this.idleTimeoutNanos = idleTimeoutMillis * 1_000_000L;
+        this.aToB = new Direction(aToB, new Random(seed));
+        this.bToA = new Direction(bToA, new Random(seed ^ SEED_SCRAMBLE));
+        this.endpointA = new Endpoint(this.bToA, this.aToB);
+        this.endpointB = new Endpoint(this.aToB, this.bToA);
+    }
+
+    /**
+     * @return the {@link NetworkAdapter} of endpoint A
+     */
+    public @NotNull NetworkAdapter getEndpointA() {
+        return endpointA;
+    }
+
+    /**
+     * @return the {@link NetworkAdapter} of endpoint B
+     */
+    public @NotNull NetworkAdapter getEndpointB() {
+        return endpointB;
+    }
+
+    /**
+     * @return the current time of this link in nanoseconds since its creation. Virtual or real, depending on the mode
+     */
+    public long getTimeNanos() {
+        synchronized (lock) {
+            return now();
+        }
+    }
+
+    /**
+     * @return a snapshot of the counters for data written by endpoint A
+     */
+    public @NotNull LinkStatistics getStatisticsAToB() {
+        synchronized (lock) {
+            return aToB.snapshot();
+        }
+    }
+
+    /**
+     * @return a snapshot of the counters for data written by endpoint B
+     */
+    public @NotNull LinkStatistics getStatisticsBToA() {
+        synchronized (lock) {
+            return bToA.snapshot();
+        }
+    }
+
+    private long now() {
+        return virtualTime ? virtualNanos : System.nanoTime() - startNanos;
+    }
+
+    private class Endpoint implements NetworkAdapter {
+
+        private final Direction input;
+        private final Direction output;
+
+        private Endpoint(Direction input, Direction output) {
+            this.input = input;
+            this.output = output;
+        }
+
+        @Override
+        public byte @NotNull [] read(int count) throws NetworkException {
+            synchronized (lock) {
+                return input.read(count, -1);
+            }
+        }
+
+        @Override
+        public byte @NotNull [] read(int count, long timeoutNanos) throws NetworkException {
+            synchronized (lock) {
+                return input.read(count, Math.max(0, timeoutNanos));
+            }
+        }
+
+        @Override
+        public void write(byte... data) throws NetworkException {
+            if (data != null) {
+                write(data, 0, data.length);
+            }
+        }
+
+        @Override
+        public void write(byte @NotNull [] data, int offset, int length) {
+            if (length == 0) {
+                return;
+            }
+            synchronized (lock) {
+                output.write(data, offset, length);
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private class Direction {
+
+        private final LinkProfile profile;
+        private final Random random;
+        private final PriorityQueue<Chunk> inFlight = new PriorityQueue<>();
+        private final ArrayDeque<Chunk> arrived = new ArrayDeque<>();
+        private int arrivedBytes = 0;
+        private long busyUntil = 0;
+        private long lastArrival = 0;
+        private long writtenBytes = 0;
+        private long deliveredBytes = 0;
+        private long droppedBytes = 0;
+        private long flippedBits = 0;
+        private long truncatedWrites = 0;
+
+        private Direction(LinkProfile profile, Random random) {
+            this.profile = profile;
+            this.random = random;
+        }
+
+        private void write(byte[] data, int offset, int writtenLength) {
+            writtenBytes += writtenLength;
+            int length = writtenLength;
+            if (profile.truncationRate() > 0 && random.nextDouble() < profile.truncationRate()) {
+                length = random.nextInt(length);
+                truncatedWrites++;
+            }
+            byte[] transmitted = new byte[length];
+            int transmittedLength = 0;
+            for (int i = 0; i < length; i++) {
+                if (profile.byteDropRate() > 0 && random.nextDouble() < profile.byteDropRate()) {
+                    continue;
+                }
+                byte b = data[offset + i];
+                if (profile.bitFlipRate() > 0 && random.nextDouble() < profile.bitFlipRate()) {
+                    b ^= (byte) (1 << random.nextInt(8));
+                    flippedBits++;
+                }
+                transmitted[transmittedLength++] = b;
+            }
+            droppedBytes += writtenLength - transmittedLength;
+            // bandwidth is occupied by every written byte, including those lost on the way
+            long start = Math.max(now(), busyUntil);
+            busyUntil = start + (profile.bytesPerSecond() > 0 ? writtenLength * 1_000_000_000L / profile.bytesPerSecond() : 0);
+            long jitter = profile.jitterNanos() > 0 ? (long) (random.nextDouble() * profile.jitterNanos()) : 0;
+            long arrival = busyUntil + profile.latencyNanos() + jitter;
+            if (profile.reorderRate() == 0 || random.nextDouble() >= profile.reorderRate()) {
+                arrival = Math.max(arrival, lastArrival);
+            }
+            lastArrival = Math.max(arrival, lastArrival);
+            if (transmittedLength > 0) {
+                inFlight.add(new Chunk(transmitted, transmittedLength, arrival, chunkSequence++));
+            }
+        }
+
+        /**
+         * @param timeoutNanos Real time after which the arrived bytes are returned even if fewer than count. The idle
+         *                     timeout applies as well, but returns the arrived bytes instead of throwing. Negative to
+         *                     wait for all of them
+         */
+        private byte[] read(int count, long timeoutNanos) throws NetworkException {
+            long idleWaitStart = System.nanoTime();
+            long deadline = idleWaitStart + timeoutNanos;
+            while (true) {
+                releaseArrived();
+                if (arrivedBytes >= count) {
+                    return take(count);
+                }
+                long remainingTimeout = timeoutNanos < 0 ? Long.MAX_VALUE : deadline - System.nanoTime();
+                if (remainingTimeout <= 0) {
+                    return take(arrivedBytes);
+                }
+                Chunk next = inFlight.peek();
+                if (next != null) {
+                    idleWaitStart = System.nanoTime();
+                    if (virtualTime) {
+                        virtualNanos = Math.max(virtualNanos, next.arrival);
+                    } else {
+                        awaitNanos(Math.min(next.arrival - now(), remainingTimeout));
+                    }
+                } else {
+                    long remaining = idleTimeoutNanos - (System.nanoTime() - idleWaitStart);
+                    if (remaining <= 0) {
+                        if (virtualTime) {
+                            virtualNanos += idleTimeoutNanos;
+                        }
+                        if (timeoutNanos >= 0) {
+                            return take(arrivedBytes);
+                        }
+                        throw new NetworkException("No data received within idle timeout");
+                    }
+                    awaitNanos(Math.min(remaining, remainingTimeout));
+                }
+            }
+        }
+
+        private void releaseArrived() {
+            long now = now();
+            while (!inFlight.isEmpty() && inFlight.peek().arrival <= now) {
+                Chunk chunk = inFlight.poll();
+                arrived.add(chunk);
+                arrivedBytes += chunk.length;
+            }
+        }
+
+        private byte[] take(int count) {
+            byte[] result = new byte[count];
+            int position = 0;
+            while (position < count) {
+                Chunk chunk = arrived.peek();
+                int copied = Math.min(count - position, chunk.length - chunk.position);
+                System.arraycopy(chunk.data, chunk.position, result, position, copied);
+                chunk.position += copied;
+                position += copied;
+                if (chunk.position == chunk.length) {
+                    arrived.poll();
+                }
+            }
+            arrivedBytes -= count;
+            deliveredBytes += count;
+            return result;
+        }
+
+        private void awaitNanos(long nanos) throws NetworkException {
+            if (nanos <= 0) {
+                return;
+            }
+            try {
+                lock.wait(nanos / 1_000_000L, (int) (nanos % 1_000_000L));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new NetworkException("Interrupted while waiting for data", e);
+            }
+        }
+
+        private LinkStatistics snapshot() {
+            return new LinkStatistics(writtenBytes, deliveredBytes, droppedBytes, flippedBits, truncatedWrites);
+        }
+    }
+
+    private static class Chunk implements Comparable<Chunk> {
+
+        private final byte[] data;
+        private final int length;
+        private final long arrival;
+        private final long sequence;
+        private int position = 0;
+
+        private Chunk(byte[] data, int length, long arrival, long sequence) {
+            this.data = data;
+            this.length = length;
+            this.arrival = arrival;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Chunk other) {
+            int result = Long.compare(arrival, other.arrival);
+            return result != 0 ? result : Long.compare(sequence, other.sequence);
+        }
+    }
+
+}
@@ -0,0 +1,14 @@
+package net.seblit.packeteer.sim;
+
+/**
+ * A snapshot of the counters of one direction of a link simulated by {@link LinkSimulator}
+ *
+ * @param writtenBytes    Count of bytes written to the link
+ * @param deliveredBytes  Count of bytes that were read from the link
+ * @param droppedBytes    Count of bytes lost due to drops and truncation
+ * @param flippedBits     Count of bits that were corrupted
+ * @param truncatedWrites Count of writes that were cut off
+ */
+public record LinkStatistics(long writtenBytes, long deliveredBytes, long droppedBytes, long flippedBits,
+                             long truncatedWrites) {
+}
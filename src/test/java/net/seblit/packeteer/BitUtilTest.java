@@ -66,4 +66,27 @@ public class BitUtilTest {
         assertEquals(value, BitUtil.intFrom16Bit(low, high));
     }
 
+    @ParameterizedTest
+    @ValueSource(ints = {0x0, 0xFFFFFFFF, 0x12345678, 0x80000001})
+    public void testIntFromBytes(int value) {
+        byte[] data = {0, BitUtil.getByteAt(value, 0), BitUtil.getByteAt(value, 1), BitUtil.getByteAt(value, 2), BitUtil.getByteAt(value, 3)};
+        assertEquals(value, BitUtil.intFromBytes(data, 1, 4));
+        assertEquals(value & 0xFFFF, BitUtil.intFromBytes(data, 1, 2));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 0x7F, 0x80, 0x3FFF, 0x4000, 0xFFFF, 0xFFFFFFFF})
+    public void testPutVarInt(int value) {
+        byte[] data = new byte[6];
+        int end = BitUtil.putVarInt(data, 1, value);
+
+        assertEquals(1 + BitUtil.getVarIntSize(value), end);
+        long decoded = 0;
+        for (int i = 1; i < end; i++) {
+            decoded |= (long) (data[i] & 0x7F) << 7 * (i - 1);
+            assertEquals(i < end - 1, (data[i] & 0x80) != 0);
+        }
+        assertEquals(value & 0xFFFFFFFFL, decoded);
+    }
+
 }
@@ -1,12 +1,32 @@
 package net.seblit.packeteer;
 
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import net.seblit.packeteer.sim.LinkProfile;
+import net.seblit.packeteer.sim.LinkSimulator;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
 import org.mockito.ArgumentCaptor;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -66,6 +86,27 @@ public class ClientTest {
             TEST_DATA_PACKET_PAYLOAD[1],
             TEST_DATA_PACKET_PAYLOAD[2]
     };
+    private static final PacketCodec<long[]> TEST_CODEC = new PacketCodec<>() {
+        @Override
+        public byte getType() {
+            return 1;
+        }
+
+        @Override
+        public byte getVersion() {
+            return 1;
+        }
+
+        @Override
+        public void encode(long @NotNull [] value, @NotNull ByteBuffer target) {
+            target.putInt((int) value[0]).putLong(value[1]);
+        }
+
+        @Override
+        public long @NotNull [] decode(@NotNull ByteBuffer source) {
+            return new long[]{source.getInt(), source.getLong()};
+        }
+    };
     private NetworkAdapter mockedAdapter;
     private PacketFactory mockedFactory;
     private IncomingPacket mockedIncomingPacket;
@@ -112,6 +153,17 @@ public class ClientTest {
         assertEquals(headerChecksum, BitUtil.intFrom16Bit(data[11], data[12]));
     }
 
+    @Test
+    public void testSend_NullPayload() throws NetworkException {
+        client.send(mockedPacket, null);
+        ArgumentCaptor<byte[]> dataCaptor = ArgumentCaptor.forClass(byte[].class);
+        verify(mockedAdapter, atLeastOnce()).write(dataCaptor.capture());
+
+        byte[] data = collectWrittenData(dataCaptor);
+        assertEquals(13, data.length);
+        assertEquals(0, BitUtil.intFrom16Bit(data[7], data[8])); // payload length
+    }
+
     @Test
     public void testSend_Payload() throws NetworkException {
         int payloadLength = 10;
@@ -126,6 +178,129 @@ public class ClientTest {
         assertArrayEquals(payload, dataCaptor.getValue());
     }
 
+    @Test
+    public void testSend_PayloadSlice() throws NetworkException {
+        byte[] payload = new byte[10];
+        new Random().nextBytes(payload);
+        client.send(mockedPacket, payload, 2, 5);
+        ArgumentCaptor<byte[]> dataCaptor = ArgumentCaptor.forClass(byte[].class);
+        verify(mockedAdapter).write(dataCaptor.capture());
+        verify(mockedAdapter).write(same(payload), eq(2), eq(5));
+
+        byte[] header = dataCaptor.getValue();
+        assertEquals(5, BitUtil.intFrom16Bit(header[7], header[8]));
+        assertEquals(Client.createChecksum(payload, 2, 5), BitUtil.intFrom16Bit(header[9], header[10]));
+    }
+
+    @Test
+    public void testSend_DirectBuffer() throws NetworkException {
+        byte[] payload = new byte[10];
+        new Random().nextBytes(payload);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(payload.length).put(payload).flip();
+        // the scratch buffer is reused by later sends, so its content is checked while writing
+        doAnswer(invocation -> {
+            byte[] data = invocation.getArgument(0);
+            assertArrayEquals(payload, Arrays.copyOfRange(data, 0, payload.length));
+            return null;
+        }).when(mockedAdapter).write(any(byte[].class), eq(0), eq(payload.length));
+        client.sendBuffer(mockedPacket, buffer);
+
+        verify(mockedAdapter).write(any(byte[].class), eq(0), eq(payload.length));
+        assertEquals(0, buffer.position());
+    }
+
+    @Test
+    public void testSend_PayloadTooLarge() {
+        assertThrows(IllegalArgumentException.class, () -> client.send(mockedPacket, new byte[0x10000]));
+    }
+
+    @Test
+    public void testSend_Codec() throws NetworkException {
+        ArgumentCaptor<byte[]> headerCaptor = ArgumentCaptor.forClass(byte[].class);
+        doAnswer(invocation -> {
+            byte[] data = invocation.getArgument(0);
+            ByteBuffer payload = ByteBuffer.wrap(data, 0, invocation.getArgument(2)).order(ByteOrder.LITTLE_ENDIAN);
+            assertEquals(12, payload.remaining());
+            assertEquals(42, payload.getInt());
+            assertEquals(-1L, payload.getLong());
+            return null;
+        }).when(mockedAdapter).write(any(byte[].class), eq(0), anyInt());
+        client.send(mockedPacket, TEST_CODEC, new long[]{42, -1L});
+
+        verify(mockedAdapter).write(headerCaptor.capture());
+        assertEquals(12, BitUtil.intFrom16Bit(headerCaptor.getValue()[7], headerCaptor.getValue()[8]));
+    }
+
+    @Test
+    public void testSend_CodecMismatch() {
+        when(mockedPacket.getVersion()).thenReturn((byte) 2);
+        assertThrows(IllegalArgumentException.class, () -> client.send(mockedPacket, TEST_CODEC, new long[]{1, 1}));
+    }
+
+    @Test
+    public void testReceive_DecodedPacket() throws NetworkException, ProcessingException {
+        long[] value = {7, 8};
+        byte[] payload = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN).putInt((int) value[0]).putLong(value[1]).array();
+        NetworkAdapter senderAdapter = mock(NetworkAdapter.class);
+        new Client((byte) 1, 2, senderAdapter, mockedFactory).send(mockedPacket, payload);
+        ArgumentCaptor<byte[]> outputCaptor = ArgumentCaptor.forClass(byte[].class);
+        verify(senderAdapter, atLeastOnce()).write(outputCaptor.capture());
+        when(mockedAdapter.read(anyInt())).then(new AdapterByteStream(collectWrittenData(outputCaptor)));
+        long[][] received = new long[1][];
+        when(mockedFactory.create(anyByte(), anyByte(), anyByte(), anyByte())).thenReturn(new DecodedPacket<>(TEST_CODEC, (byte) 0) {
+            @Override
+            public void process(long @NotNull [] value) {
+                received[0] = value;
+            }
+        });
+        client.receive();
+
+        assertArrayEquals(value, received[0]);
+    }
+
+    @Test
+    public void testReceive_CodecRegistry() throws NetworkException, ProcessingException {
+        long[][] received = new long[1][];
+        PacketCodecRegistry registry = new PacketCodecRegistry();
+        registry.register(TEST_CODEC, (codec, flags) -> new DecodedPacket<>(codec, flags) {
+            @Override
+            public void process(long @NotNull [] value) {
+                received[0] = value;
+            }
+        });
+        // the payload is encoded into a buffer of the sender that is reused, so written data is copied while writing
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        NetworkAdapter senderAdapter = mock(NetworkAdapter.class);
+        doAnswer(invocation -> {
+            output.write((byte[]) invocation.getRawArguments()[0]);
+            return null;
+        }).when(senderAdapter).write(any(byte[].class));
+        doAnswer(invocation -> {
+            output.write(invocation.getArgument(0), invocation.getArgument(1), invocation.getArgument(2));
+            return null;
+        }).when(senderAdapter).write(any(byte[].class), anyInt(), anyInt());
+        new Client((byte) 1, 2, senderAdapter, registry).send(mockedPacket, registry.get(mockedPacket), new long[]{7, 8});
+        when(mockedAdapter.read(anyInt())).then(new AdapterByteStream(output.toByteArray()));
+        new Client((byte) 1, 2, mockedAdapter, registry).receive();
+
+        assertArrayEquals(new long[]{7, 8}, received[0]);
+    }
+
+    @Test
+    public void testReceive_DecodedPacketInvalid() throws NetworkException, ProcessingException {
+        // the payload is too short for the codec
+        when(mockedAdapter.read(anyInt())).then(new AdapterByteStream(TEST_DATA_PACKET));
+        DecodedPacket<long[]> packet = spy(new DecodedPacket<>(TEST_CODEC, (byte) 0) {
+            @Override
+            public void process(long @NotNull [] value) {
+            }
+        });
+        when(mockedFactory.create(anyByte(), anyByte(), anyByte(), anyByte())).thenReturn(packet);
+
+        assertThrows(ProcessingException.class, () -> client.receive());
+        verify(packet, never()).process(any(long[].class));
+    }
+
     @Test
     public void testSend_Ack() throws NetworkException {
         when(mockedPacket.isFlagSet(0)).thenReturn(true);
@@ -157,6 +332,7 @@ public class ClientTest {
         System.arraycopy(allWrittenData, 0, firstHalf, 0, firstHalf.length);
         System.arraycopy(allWrittenData, firstHalf.length, secondHalf, 0, secondHalf.length);
         assertArrayEquals(firstHalf, secondHalf);
+        assertEquals(1, client.getRetransmissionCount());
     }
 
     @Test
@@ -166,6 +342,22 @@ public class ClientTest {
         assertThrows(SendTimeoutException.class, () -> client.send(mockedPacket));
     }
 
+    @Test
+    public void testSend_Timeout() throws NetworkException {
+        when(mockedPacket.isFlagSet(0)).thenReturn(true);
+        when(mockedAdapter.read(anyInt(), anyLong())).thenReturn(new byte[0]);
+        assertThrows(SendTimeoutException.class, () -> client.send(mockedPacket, 20, TimeUnit.MILLISECONDS));
+        verify(mockedAdapter, never()).read(anyInt());
+    }
+
+    @Test
+    public void testSend_TimeoutAck() throws NetworkException {
+        when(mockedPacket.isFlagSet(0)).thenReturn(true);
+        when(mockedAdapter.read(anyInt(), anyLong())).then(new AdapterByteStream(TEST_DATA_ACK_PACKET));
+        client.send(mockedPacket, 1, TimeUnit.SECONDS);
+        assertEquals(0, client.getRetransmissionCount());
+    }
+
     @Test
     public void testSend_MessageIdWrapAround() throws NetworkException {
         for (int i = 0; i <= Byte.MAX_VALUE; i++) {
@@ -195,6 +387,59 @@ public class ClientTest {
         assertArrayEquals(TEST_DATA_PACKET_PAYLOAD, dataCaptor.getValue());
     }
 
+    @Test
+    public void testReceive_Timeout() throws NetworkException {
+        when(mockedAdapter.read(anyInt(), anyLong())).thenReturn(new byte[0]);
+        assertThrows(ReceiveTimeoutException.class, () -> client.receive(10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testReceive_TimeoutAvailable() throws NetworkException, ProcessingException {
+        // bytes that are already available are read even with a timeout of 0
+        when(mockedAdapter.read(anyInt(), anyLong())).then(new AdapterByteStream(TEST_DATA_PACKET));
+        client.receive(0, TimeUnit.MILLISECONDS);
+        verify(mockedIncomingPacket).process(TEST_DATA_PACKET_PAYLOAD);
+    }
+
+    @Test
+    public void testReceive_TimeoutPartial() throws NetworkException, ProcessingException {
+        int[] position = {0};
+        int[] available = {6};
+        when(mockedAdapter.read(anyInt(), anyLong())).then(invocation -> {
+            int count = Math.min(invocation.<Integer>getArgument(0), available[0] - position[0]);
+            byte[] result = Arrays.copyOfRange(TEST_DATA_PACKET, position[0], position[0] + count);
+            position[0] += count;
+            return result;
+        });
+        assertThrows(ReceiveTimeoutException.class, () -> client.receive(0, TimeUnit.MILLISECONDS));
+
+        // the partially read packet is continued once the remaining bytes are available
+        available[0] = TEST_DATA_PACKET.length;
+        client.receive(0, TimeUnit.MILLISECONDS);
+        verify(mockedIncomingPacket).process(TEST_DATA_PACKET_PAYLOAD);
+    }
+
+    @Test
+    public void testReceive_TimeoutNoise() throws NetworkException {
+        byte[] corruptHeader = Arrays.copyOf(TEST_DATA_PACKET, 15);
+        corruptHeader[5]++;
+        byte[] randomNoise = new byte[1024];
+        new Random(1).nextBytes(randomNoise);
+        // bytes are always available, but never form a valid packet
+        for (byte[] noise : List.of(randomNoise, corruptHeader, new byte[]{0xF})) {
+            int[] position = {0};
+            when(mockedAdapter.read(anyInt(), anyLong())).then(invocation -> {
+                byte[] result = new byte[invocation.<Integer>getArgument(0)];
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = noise[position[0]++ % noise.length];
+                }
+                return result;
+            });
+            assertTimeoutPreemptively(Duration.ofSeconds(5),
+                    () -> assertThrows(ReceiveTimeoutException.class, () -> client.receive(10, TimeUnit.MILLISECONDS)));
+        }
+    }
+
     @Test
     public void testReceive_Ack() throws NetworkException, ProcessingException {
         when(mockedAdapter.read(anyInt())).then(new AdapterByteStream(TEST_DATA_ACK_PACKET));
@@ -223,6 +468,266 @@ public class ClientTest {
         verify(mockedFactory, never()).create(anyByte(), anyByte(), anyByte(), anyByte());
     }
 
+    @Test
+    public void testSend_Crc32c() throws NetworkException {
+        Client crc32cClient = new Client((byte) 1, 2, mockedAdapter, mockedFactory, protocolVersion -> PayloadChecksum.CRC32C);
+        byte[] payload = "123456789".getBytes();
+        crc32cClient.send(mockedPacket, payload);
+        ArgumentCaptor<byte[]> dataCaptor = ArgumentCaptor.forClass(byte[].class);
+        verify(mockedAdapter, atLeastOnce()).write(dataCaptor.capture());
+
+        byte[] data = collectWrittenData(dataCaptor);
+        assertEquals(15 + payload.length, data.length);
+        assertEquals(0xE3069283, BitUtil.intFromBytes(data, 9, 4)); // payload checksum
+        int headerChecksum = Client.createChecksum(data, 2, 11);
+        assertEquals(headerChecksum, BitUtil.intFrom16Bit(data[13], data[14]));
+    }
+
+    @Test
+    public void testReceive_Crc32c() throws NetworkException, ProcessingException {
+        ProtocolPolicy policy = protocolVersion -> protocolVersion == 2 ? PayloadChecksum.CRC32C : PayloadChecksum.CRC16;
+        NetworkAdapter senderAdapter = mock(NetworkAdapter.class);
+        new Client((byte) 2, 2, senderAdapter, mockedFactory, policy).send(mockedPacket, TEST_DATA_PACKET_PAYLOAD);
+        ArgumentCaptor<byte[]> outputCaptor = ArgumentCaptor.forClass(byte[].class);
+        verify(senderAdapter, atLeastOnce()).write(outputCaptor.capture());
+
+        when(mockedAdapter.read(anyInt())).then(new AdapterByteStream(collectWrittenData(outputCaptor)));
+        new Client((byte) 1, 2, mockedAdapter, mockedFactory, policy).receive();
+        ArgumentCaptor<byte[]> dataCaptor = ArgumentCaptor.forClass(byte[].class);
+        verify(mockedIncomingPacket).process(dataCaptor.capture());
+        assertArrayEquals(TEST_DATA_PACKET_PAYLOAD, dataCaptor.getValue());
+    }
+
+    @Test
+    public void testSend_DeltaEncoded() throws Exception {
+        ProtocolPolicy policy = new ProtocolPolicy() {
+            @Override
+            public @NotNull PayloadChecksum getPayloadChecksum(byte protocolVersion) {
+                return PayloadChecksum.CRC16;
+            }
+
+            @Override
+            public boolean isDeltaEncoded(byte protocolVersion, byte type) {
+                return type == 1;
+            }
+        };
+        LinkSimulator simulator = new LinkSimulator(1, LinkProfile.PERFECT, 50);
+        Client sender = new Client((byte) 1, 2, simulator.getEndpointA(), mockedFactory, policy);
+        List<byte[]> received = new ArrayList<>();
+        Client receiver = new Client((byte) 1, 2, simulator.getEndpointB(), (protocolVersion, type, version, flags) -> new IncomingPacket(type, version, flags) {
+            @Override
+            public void process(byte @Nullable ... payload) {
+                received.add(payload);
+            }
+        }, policy);
+        Thread receiverThread = new Thread(() -> {
+            try {
+                for (int i = 0; i < 3; i++) {
+                    receiver.receive();
+                }
+            } catch (NetworkException | ProcessingException ignored) {
+            }
+        });
+        receiverThread.start();
+        byte[] payload = new byte[100];
+        Packet packet = new Packet((byte) 1, (byte) 1, (byte) 1);
+        sender.send(packet, payload);
+        long fullLength = simulator.getStatisticsAToB().writtenBytes();
+        payload[50] = 1;
+        sender.send(packet, payload.clone());
+        payload[99] = 2;
+        sender.send(packet, payload.clone());
+        receiverThread.join();
+
+        assertEquals(3, received.size());
+        assertEquals(0, received.get(0)[50]);
+        assertEquals(1, received.get(1)[50]);
+        assertEquals(2, received.get(2)[99]);
+        assertTrue(simulator.getStatisticsAToB().writtenBytes() - fullLength < fullLength);
+    }
+
+    @Test
+    public void testSend_CompactSession() throws Exception {
+        ProtocolPolicy policy = new ProtocolPolicy() {
+            @Override
+            public @NotNull PayloadChecksum getPayloadChecksum(byte protocolVersion) {
+                return PayloadChecksum.CRC16;
+            }
+
+            @Override
+            public @NotNull HeaderFormat getHeaderFormat(byte protocolVersion) {
+                return HeaderFormat.COMPACT_SESSION;
+            }
+        };
+        LinkSimulator simulator = new LinkSimulator(1, LinkProfile.PERFECT, 50);
+        Client sender = new Client((byte) 1, 2, simulator.getEndpointA(), mockedFactory, policy);
+        List<Byte> received = new ArrayList<>();
+        Client receiver = new Client((byte) 1, 2, simulator.getEndpointB(), (protocolVersion, type, version, flags) -> new IncomingPacket(type, version, flags) {
+            @Override
+            public void process(byte @Nullable ... payload) {
+                received.add(protocolVersion);
+                received.add(getVersion());
+            }
+        }, policy);
+        Thread receiverThread = new Thread(() -> {
+            try {
+                for (int i = 0; i < 3; i++) {
+                    receiver.receive();
+                }
+            } catch (NetworkException | ProcessingException ignored) {
+            }
+        });
+        receiverThread.start();
+        Packet packet = new Packet((byte) 1, (byte) 3, (byte) 1);
+        for (int i = 0; i < 3; i++) {
+            sender.send(packet);
+        }
+        receiverThread.join();
+
+        assertEquals(List.of((byte) 1, (byte) 3, (byte) 1, (byte) 3, (byte) 1, (byte) 3), received);
+        assertEquals(10 + 8 + 8, simulator.getStatisticsAToB().writtenBytes()); // versions omitted after first ack
+    }
+
+    @Test
+    public void testSend_CompactSessionRestart() throws Exception {
+        ProtocolPolicy policy = new ProtocolPolicy() {
+            @Override
+            public @NotNull PayloadChecksum getPayloadChecksum(byte protocolVersion) {
+                return PayloadChecksum.CRC16;
+            }
+
+            @Override
+            public @NotNull HeaderFormat getHeaderFormat(byte protocolVersion) {
+                return HeaderFormat.COMPACT_SESSION;
+            }
+        };
+        LinkSimulator simulator = new LinkSimulator(1, LinkProfile.PERFECT, 50);
+        Client sender = new Client((byte) 1, 2, simulator.getEndpointA(), mockedFactory, policy);
+        List<Byte> received = Collections.synchronizedList(new ArrayList<>());
+        PacketFactory factory = (protocolVersion, type, version, flags) -> new IncomingPacket(type, version, flags) {
+            @Override
+            public void process(byte @Nullable ... payload) {
+                received.add(getType());
+            }
+        };
+        Packet first = new Packet((byte) 1, (byte) 3, (byte) 1);
+        Packet second = new Packet((byte) 2, (byte) 3, (byte) 1);
+        Thread receiverThread = receiveInBackground(new Client((byte) 1, 2, simulator.getEndpointB(), factory, policy), 2);
+        sender.send(first);
+        sender.send(first);
+        receiverThread.join();
+
+        // the restarted receiver rejects the first attempt, which omits the versions
+        receiverThread = receiveInBackground(new Client((byte) 1, 2, simulator.getEndpointB(), factory, policy), 3);
+        sender.send(first);
+        sender.send(second);
+        sender.send(second);
+        receiverThread.join();
+
+        assertEquals(List.of((byte) 1, (byte) 1, (byte) 1, (byte) 2, (byte) 2), received);
+        assertEquals(1, sender.getRetransmissionCount());
+    }
+
+    private static Thread receiveInBackground(Client receiver, int packets) {
+        Thread thread = new Thread(() -> {
+            int processed = 0;
+            while (processed < packets) {
+                try {
+                    receiver.receive();
+                    processed++;
+                } catch (NetworkException | ProcessingException ignored) {
+                }
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    @Test
+    public void testSend_FlightRecorderEvents() throws Throwable {
+        when(mockedPacket.isFlagSet(0)).thenReturn(true);
+        when(mockedAdapter.read(anyInt())).then(new AdapterByteStream(TEST_DATA_ACK_PACKET));
+        List<RecordedEvent> events = record(() -> client.send(mockedPacket, TEST_DATA_PACKET_PAYLOAD));
+
+        RecordedEvent sendEvent = findEvent(events, "net.seblit.packeteer.FrameSend");
+        assertEquals(0, sendEvent.getByte("messageId"));
+        assertEquals(1, sendEvent.getByte("type"));
+        assertEquals(TEST_DATA_PACKET_PAYLOAD.length, sendEvent.getInt("payloadSize"));
+        assertEquals(1, sendEvent.getInt("attempt"));
+        assertTrue(findEvent(events, "net.seblit.packeteer.AckWait").getBoolean("acknowledged"));
+        assertEquals(Packet.TYPE_ACK, findEvent(events, "net.seblit.packeteer.FrameReceive").getByte("type"));
+    }
+
+    @Test
+    public void testSend_FlightRecorderEventsAllocationFree() throws Throwable {
+        // initializes Flight Recorder, the events remain disabled afterwards
+        record(() -> {
+        });
+        NetworkAdapter adapter = new NetworkAdapter() {
+            @Override
+            public byte @NotNull [] read(int count) {
+                return new byte[count];
+            }
+
+            @Override
+            public void write(byte... data) {
+            }
+
+            @Override
+            public void write(byte @NotNull [] data, int offset, int length) {
+            }
+        };
+        Client allocationClient = new Client((byte) 1, 1, adapter, mockedFactory);
+        Packet packet = new UninstrumentedPacket();
+        byte[] payload = new byte[64];
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+        for (int i = 0; i < 20_000; i++) {
+            allocationClient.send(packet, payload, 0, payload.length);
+        }
+        long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 10_000; i++) {
+            allocationClient.send(packet, payload, 0, payload.length);
+        }
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        assertEquals(0, allocated);
+    }
+
+    @Test
+    public void testReceive_FlightRecorderEventsDefaults() throws Throwable {
+        byte[] corruptPacket = TEST_DATA_PACKET.clone();
+        corruptPacket[5] = 2; // change packet version without adjusting checksum
+        byte[] data = new byte[corruptPacket.length + TEST_DATA_PACKET.length];
+        System.arraycopy(corruptPacket, 0, data, 0, corruptPacket.length);
+        System.arraycopy(TEST_DATA_PACKET, 0, data, corruptPacket.length, TEST_DATA_PACKET.length);
+        when(mockedAdapter.read(anyInt())).then(new AdapterByteStream(data));
+        List<RecordedEvent> events = record(() -> client.receive(), false);
+
+        // events recorded for every frame are disabled by default, errors aren't
+        assertTrue(events.stream().noneMatch(event -> event.getEventType().getName().equals("net.seblit.packeteer.FrameReceive")));
+        findEvent(events, "net.seblit.packeteer.ChecksumReject");
+    }
+
+    @Test
+    public void testReceive_FlightRecorderEvents() throws Throwable {
+        byte[] corruptPacket = TEST_DATA_PACKET.clone();
+        corruptPacket[5] = 2; // change packet version without adjusting checksum
+        byte[] data = new byte[1 + corruptPacket.length + TEST_DATA_PACKET.length];
+        data[0] = 0x5; // noise
+        System.arraycopy(corruptPacket, 0, data, 1, corruptPacket.length);
+        System.arraycopy(TEST_DATA_PACKET, 0, data, 1 + corruptPacket.length, TEST_DATA_PACKET.length);
+        when(mockedAdapter.read(anyInt())).then(new AdapterByteStream(data));
+        List<RecordedEvent> events = record(() -> client.receive());
+
+        assertTrue(findEvent(events, "net.seblit.packeteer.Resync").getInt("skippedBytes") > 0);
+        assertTrue(findEvent(events, "net.seblit.packeteer.ChecksumReject").getBoolean("header"));
+        RecordedEvent receiveEvent = findEvent(events, "net.seblit.packeteer.FrameReceive");
+        assertEquals(TEST_DATA_PACKET[4], receiveEvent.getByte("type"));
+        assertEquals(TEST_DATA_PACKET_PAYLOAD.length, receiveEvent.getInt("payloadSize"));
+        assertTrue(receiveEvent.getBoolean("processed"));
+    }
+
     @Test
     public void testChecksum() {
         byte[] data = {0b0, 0b1, 0b10, 0b11};
@@ -259,6 +764,70 @@ public class ClientTest {
         }
     }
 
+    /**
+     * Mockito instruments {@link Packet} to mock it, which allocates on every call of its methods
+     */
+    private static class UninstrumentedPacket extends Packet {
+
+        private UninstrumentedPacket() {
+            super((byte) 1, (byte) 1, (byte) 0);
+        }
+
+        @Override
+        public byte getType() {
+            return 1;
+        }
+
+        @Override
+        public byte getVersion() {
+            return 1;
+        }
+
+        @Override
+        public byte getFlags() {
+            return 0;
+        }
+
+        @Override
+        public boolean isFlagSet(int index) {
+            return false;
+        }
+    }
+
+    private static List<RecordedEvent> record(Executable executable) throws Throwable {
+        return record(executable, true);
+    }
+
+    /**
+     * @param enableAll Whether to enable all events, otherwise the default settings of the events are used
+     */
+    private static List<RecordedEvent> record(Executable executable, boolean enableAll) throws Throwable {
+        Path file = Files.createTempFile("packeteer", ".jfr");
+        try (Recording recording = new Recording()) {
+            if (enableAll) {
+                recording.enable(FrameSendEvent.class);
+                recording.enable(FrameReceiveEvent.class);
+                recording.enable(ResyncEvent.class);
+                recording.enable(ChecksumRejectEvent.class);
+                recording.enable(AckWaitEvent.class);
+            }
+            recording.start();
+            executable.execute();
+            recording.stop();
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static RecordedEvent findEvent(List<RecordedEvent> events, String name) {
+        return events.stream()
+                .filter(event -> event.getEventType().getName().equals(name))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("No event " + name + " recorded"));
+    }
+
     private byte[] collectWrittenData(ArgumentCaptor<byte[]> dataCaptor) {
         int totalLength = dataCaptor.getAllValues().stream().mapToInt(a -> a.length).sum();
         byte[] result = new byte[totalLength];
@@ -0,0 +1,192 @@
+package net.seblit.packeteer;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DeltaEncoderTest {
+
+    private static final byte TYPE = 5;
+    private final DeltaEncoder encoder = new DeltaEncoder();
+    private final DeltaDecoder decoder = new DeltaDecoder();
+    private final byte[] encoded = new byte[0xFFFF];
+    private final byte[] decoded = new byte[0xFFFF];
+
+    @Test
+    public void testEncode_Full() throws ProcessingException {
+        byte[] payload = createPayload();
+        int length = encoder.encode(TYPE, (byte) 1, true, payload, 0, payload.length, encoded);
+
+        assertEquals(payload.length + 1, length);
+        assertEquals(DeltaEncoder.MODE_FULL, encoded[0]);
+        assertArrayEquals(payload, transmit((byte) 1, length, true));
+    }
+
+    @Test
+    public void testEncode_Delta() throws ProcessingException {
+        byte[] base = createPayload();
+        transmitAcknowledged((byte) 1, base);
+        byte[] payload = base.clone();
+        payload[10]++;
+        payload[11]++;
+        payload[150]--;
+        int length = encoder.encode(TYPE, (byte) 2, true, payload, 0, payload.length, encoded);
+
+        assertEquals(DeltaEncoder.MODE_DELTA, encoded[0]);
+        assertTrue(length < 20);
+        assertArrayEquals(payload, transmit((byte) 2, length, true));
+    }
+
+    @Test
+    public void testEncode_LengthChange() throws ProcessingException {
+        byte[] base = createPayload();
+        transmitAcknowledged((byte) 1, base);
+        byte[] longer = Arrays.copyOf(base, base.length + 3);
+        longer[base.length] = 1;
+        assertArrayEquals(longer, transmitAcknowledged((byte) 2, longer));
+        byte[] shorter = Arrays.copyOf(base, base.length - 10);
+        assertArrayEquals(shorter, transmitAcknowledged((byte) 3, shorter));
+    }
+
+    @Test
+    public void testEncode_FullIfDeltaLarger() throws ProcessingException {
+        byte[] base = createPayload();
+        transmitAcknowledged((byte) 1, base);
+        byte[] payload = base.clone();
+        for (int i = 0; i < payload.length; i++) {
+            payload[i]++;
+        }
+        int length = encoder.encode(TYPE, (byte) 2, true, payload, 0, payload.length, encoded);
+
+        assertEquals(DeltaEncoder.MODE_FULL, encoded[0]);
+        assertArrayEquals(payload, transmit((byte) 2, length, true));
+    }
+
+    @Test
+    public void testFailed() {
+        byte[] base = createPayload();
+        encoder.encode(TYPE, (byte) 1, true, base, 0, base.length, encoded);
+        encoder.acknowledged(TYPE, (byte) 1);
+        encoder.failed(TYPE);
+        encoder.encode(TYPE, (byte) 2, true, base, 0, base.length, encoded);
+
+        assertEquals(DeltaEncoder.MODE_FULL, encoded[0]);
+    }
+
+    @Test
+    public void testAcknowledged_Outdated() {
+        byte[] payload = createPayload();
+        encoder.encode(TYPE, (byte) 1, true, payload, 0, payload.length, encoded);
+        encoder.encode(TYPE, (byte) 2, false, payload, 0, payload.length, encoded);
+        encoder.encode(TYPE, (byte) 3, true, payload, 0, payload.length, encoded);
+        encoder.acknowledged(TYPE, (byte) 1);
+        encoder.encode(TYPE, (byte) 4, true, payload, 0, payload.length, encoded);
+
+        assertEquals(DeltaEncoder.MODE_FULL, encoded[0]);
+    }
+
+    @Test
+    public void testDecode_Retransmission() throws ProcessingException {
+        byte[] base = createPayload();
+        transmitAcknowledged((byte) 1, base);
+        byte[] payload = base.clone();
+        payload[0]++;
+        int length = encoder.encode(TYPE, (byte) 2, true, payload, 0, payload.length, encoded);
+        // acknowledgement lost, the same encoding is received again and again
+        assertArrayEquals(payload, transmit((byte) 2, length, true));
+        assertArrayEquals(payload, transmit((byte) 2, length, true));
+        assertArrayEquals(payload, transmit((byte) 2, length, true));
+    }
+
+    @Test
+    public void testDecode_RetransmissionChecksumCollision() throws ProcessingException {
+        byte[] base = withZeroChecksum(createPayload());
+        transmitAcknowledged((byte) 1, base);
+        byte[] payload = base.clone();
+        payload[0]++;
+        payload = withZeroChecksum(Arrays.copyOf(payload, payload.length - 2));
+        assertEquals(Client.createChecksum(base), Client.createChecksum(payload));
+        int length = encoder.encode(TYPE, (byte) 2, true, payload, 0, payload.length, encoded);
+        // acknowledgement lost, the retransmission still refers to the previous base
+        assertArrayEquals(payload, transmit((byte) 2, length, true));
+        assertArrayEquals(payload, transmit((byte) 2, length, true));
+    }
+
+    @Test
+    public void testDecode_ChecksumMismatch() throws ProcessingException {
+        byte[] base = createPayload();
+        transmitAcknowledged((byte) 1, base);
+        byte[] payload = base.clone();
+        payload[0]++;
+        int length = encoder.encode(TYPE, (byte) 2, true, payload, 0, payload.length, encoded);
+        encoded[length - 1]++;
+
+        assertThrows(ProcessingException.class, () -> transmit((byte) 2, length, true));
+    }
+
+    @Test
+    public void testDecode_UnknownBase() {
+        byte[] base = createPayload();
+        encoder.encode(TYPE, (byte) 1, true, base, 0, base.length, encoded);
+        encoder.acknowledged(TYPE, (byte) 1);
+        byte[] payload = base.clone();
+        payload[0]++;
+        int length = encoder.encode(TYPE, (byte) 2, true, payload, 0, payload.length, encoded);
+
+        assertThrows(ProcessingException.class, () -> transmit((byte) 2, length, true));
+    }
+
+    @Test
+    public void testDecode_NoAckKeepsBase() throws ProcessingException {
+        byte[] base = createPayload();
+        transmitAcknowledged((byte) 1, base);
+        for (int i = 0; i < 3; i++) {
+            byte[] payload = base.clone();
+            payload[i]++;
+            int length = encoder.encode(TYPE, (byte) (2 + i), false, payload, 0, payload.length, encoded);
+            assertArrayEquals(payload, transmit((byte) (2 + i), length, false));
+        }
+    }
+
+    @Test
+    public void testDecode_Invalid() {
+        assertThrows(ProcessingException.class, () -> decoder.decode(TYPE, (byte) 1, true, ByteBuffer.allocate(0), decoded));
+        assertThrows(ProcessingException.class, () -> decoder.decode(TYPE, (byte) 1, true, ByteBuffer.wrap(new byte[]{2}), decoded));
+        assertThrows(ProcessingException.class, () -> decoder.decode(TYPE, (byte) 1, true, ByteBuffer.wrap(new byte[]{1, 0}), decoded));
+    }
+
+    private byte[] transmitAcknowledged(byte messageId, byte[] payload) throws ProcessingException {
+        int length = encoder.encode(TYPE, messageId, true, payload, 0, payload.length, encoded);
+        byte[] result = transmit(messageId, length, true);
+        encoder.acknowledged(TYPE, messageId);
+        return result;
+    }
+
+    private byte[] transmit(byte messageId, int encodedLength, boolean requiresAck) throws ProcessingException {
+        int length = decoder.decode(TYPE, messageId, requiresAck, ByteBuffer.wrap(encoded, 0, encodedLength), decoded);
+        return Arrays.copyOf(decoded, length);
+    }
+
+    /**
+     * @return the payload followed by its CRC-16/IBM checksum, which results in a checksum of 0
+     */
+    private static byte[] withZeroChecksum(byte[] payload) {
+        int checksum = Client.createChecksum(payload);
+        byte[] result = Arrays.copyOf(payload, payload.length + 2);
+        result[payload.length] = BitUtil.getByteAt(checksum, 0);
+        result[payload.length + 1] = BitUtil.getByteAt(checksum, 1);
+        return result;
+    }
+
+    private static byte[] createPayload() {
+        byte[] payload = new byte[200];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) (i * 31);
+        }
+        return payload;
+    }
+
+}
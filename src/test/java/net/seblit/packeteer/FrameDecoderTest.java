@@ -0,0 +1,151 @@
+package net.seblit.packeteer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FrameDecoderTest {
+
+    private static final byte[] TEST_DATA_PACKET_PAYLOAD = {
+            (byte) 0b10101010, // payload first byte
+            0b01010101, // payload second byte
+            0b00110011 // payload third byte
+    };
+    private static final byte[] TEST_DATA_PACKET = {
+            0xF, // start low
+            0xA, // start high
+            1, // protocol version
+            0, // messageId
+            1, // type
+            1, // packet version
+            0b01111111, // flags
+            3, // payload length low
+            0, // payload length high
+            0b01011111, // payload checksum low,
+            0b01100101, // payload checksum high
+            (byte) 0b11110000, // header checksum low
+            (byte) 0b11010100, // header checksum high
+            TEST_DATA_PACKET_PAYLOAD[0],
+            TEST_DATA_PACKET_PAYLOAD[1],
+            TEST_DATA_PACKET_PAYLOAD[2]
+    };
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 5, 16})
+    public void testDecode_Chunked(int chunkSize) {
+        FrameDecoder decoder = new FrameDecoder(ProtocolPolicy.DEFAULT);
+        FrameDecoder.Result result = FrameDecoder.Result.INCOMPLETE;
+        for (int offset = 0; offset < TEST_DATA_PACKET.length; offset += chunkSize) {
+            assertEquals(FrameDecoder.Result.INCOMPLETE, result);
+            result = decoder.decode(ByteBuffer.wrap(TEST_DATA_PACKET, offset, Math.min(chunkSize, TEST_DATA_PACKET.length - offset)));
+        }
+
+        assertEquals(FrameDecoder.Result.FRAME, result);
+        assertEquals(TEST_DATA_PACKET[2], decoder.getProtocolVersion());
+        assertEquals(TEST_DATA_PACKET[3], decoder.getMessageId());
+        assertEquals(TEST_DATA_PACKET[4], decoder.getType());
+        assertEquals(TEST_DATA_PACKET[5], decoder.getVersion());
+        assertEquals(TEST_DATA_PACKET[6], decoder.getFlags());
+        assertEquals(TEST_DATA_PACKET_PAYLOAD.length, decoder.getPayloadLength());
+        byte[] payload = new byte[decoder.getPayloadLength()];
+        decoder.getPayload().get(payload);
+        assertArrayEquals(TEST_DATA_PACKET_PAYLOAD, payload);
+        assertTrue(decoder.getPayload().isReadOnly());
+    }
+
+    @Test
+    public void testDecode_Resync() {
+        byte[] data = new byte[TEST_DATA_PACKET.length + 3];
+        data[0] = 0xF; // start low followed by another start low
+        data[1] = 0xF;
+        data[2] = 0x5; // noise
+        System.arraycopy(TEST_DATA_PACKET, 0, data, 3, TEST_DATA_PACKET.length);
+        FrameDecoder decoder = new FrameDecoder(ProtocolPolicy.DEFAULT);
+
+        assertEquals(FrameDecoder.Result.FRAME, decoder.decode(ByteBuffer.wrap(data)));
+        assertEquals(3, decoder.getSkippedBytes());
+    }
+
+    @Test
+    public void testDecode_MultipleFrames() {
+        byte[] data = new byte[TEST_DATA_PACKET.length * 2];
+        System.arraycopy(TEST_DATA_PACKET, 0, data, 0, TEST_DATA_PACKET.length);
+        System.arraycopy(TEST_DATA_PACKET, 0, data, TEST_DATA_PACKET.length, TEST_DATA_PACKET.length);
+        ByteBuffer source = ByteBuffer.wrap(data);
+        FrameDecoder decoder = new FrameDecoder(ProtocolPolicy.DEFAULT);
+
+        assertEquals(FrameDecoder.Result.FRAME, decoder.decode(source));
+        assertEquals(TEST_DATA_PACKET.length, source.remaining());
+        assertEquals(FrameDecoder.Result.FRAME, decoder.decode(source));
+        assertFalse(source.hasRemaining());
+    }
+
+    @Test
+    public void testDecode_InvalidHeader() {
+        byte[] data = TEST_DATA_PACKET.clone();
+        data[5] = 2; // change packet version without adjusting checksum
+        FrameDecoder decoder = new FrameDecoder(ProtocolPolicy.DEFAULT);
+
+        assertEquals(FrameDecoder.Result.HEADER_CORRUPT, decoder.decode(ByteBuffer.wrap(data)));
+    }
+
+    @Test
+    public void testDecode_InvalidPayload() {
+        byte[] data = TEST_DATA_PACKET.clone();
+        data[13] = 0; // change first payload byte without adjusting checksum
+        FrameDecoder decoder = new FrameDecoder(ProtocolPolicy.DEFAULT);
+
+        assertEquals(FrameDecoder.Result.PAYLOAD_CORRUPT, decoder.decode(ByteBuffer.wrap(data)));
+        assertEquals(TEST_DATA_PACKET[4], decoder.getType());
+    }
+
+    @Test
+    public void testGetRequiredBytes() {
+        FrameDecoder decoder = new FrameDecoder(ProtocolPolicy.DEFAULT);
+        int position = 0;
+        while (position < TEST_DATA_PACKET.length) {
+            int required = decoder.getRequiredBytes();
+            FrameDecoder.Result result = decoder.decode(ByteBuffer.wrap(TEST_DATA_PACKET, position, required));
+            position += required;
+            assertEquals(position == TEST_DATA_PACKET.length ? FrameDecoder.Result.FRAME : FrameDecoder.Result.INCOMPLETE, result);
+        }
+    }
+
+    @Test
+    public void testDecode_CompactUnknownSession() {
+        ProtocolPolicy policy = FrameEncoderTest.compactPolicy(HeaderFormat.COMPACT_SESSION);
+        FrameEncoder encoder = new FrameEncoder(policy);
+        ByteBuffer target = ByteBuffer.allocate(encoder.getHeaderLength((byte) 1) * 2);
+        encoder.encodeHeader(target, (byte) 1, (byte) 0, (byte) 2, (byte) 3, (byte) 0, 0, 0, true, false);
+        encoder.encodeHeader(target, (byte) 1, (byte) 1, (byte) 2, (byte) 3, (byte) 0, 0, 0, false, false);
+        target.flip();
+        FrameDecoder decoder = new FrameDecoder(policy);
+
+        assertEquals(FrameDecoder.Result.HEADER_CORRUPT, decoder.decode(target)); // protocol version never received
+        assertEquals(FrameDecoder.Result.FRAME, decoder.decode(target));
+        assertEquals(1, decoder.getMessageId());
+    }
+
+    @Test
+    public void testGetRequiredBytes_Compact() {
+        ProtocolPolicy policy = FrameEncoderTest.compactPolicy(HeaderFormat.COMPACT);
+        FrameEncoder encoder = new FrameEncoder(policy);
+        byte[] data = new byte[encoder.getHeaderLength((byte) 1) + 200];
+        ByteBuffer target = ByteBuffer.wrap(data);
+        encoder.encode(target, (byte) 1, (byte) 2, (byte) 3, (byte) 4, (byte) 5, new byte[200], 0, 200);
+        int length = target.position();
+        FrameDecoder decoder = new FrameDecoder(policy);
+        int position = 0;
+        while (position < length) {
+            int required = decoder.getRequiredBytes();
+            FrameDecoder.Result result = decoder.decode(ByteBuffer.wrap(data, position, required));
+            position += required;
+            assertEquals(position == length ? FrameDecoder.Result.FRAME : FrameDecoder.Result.INCOMPLETE, result);
+        }
+    }
+
+}
@@ -0,0 +1,109 @@
+package net.seblit.packeteer;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FrameEncoderTest {
+
+    @Test
+    public void testEncodeHeader() {
+        FrameEncoder encoder = new FrameEncoder(ProtocolPolicy.DEFAULT);
+        ByteBuffer target = ByteBuffer.allocate(encoder.getHeaderLength((byte) 1));
+        encoder.encodeHeader(target, (byte) 1, (byte) 0, Packet.TYPE_ACK, (byte) 1, (byte) 0b00000010, 0, 0);
+
+        byte[] expected = {
+                0xF, // start low
+                0xA, // start high
+                1, // protocol version
+                0, // messageId
+                Packet.TYPE_ACK, // type
+                1, // packet version
+                0b00000010, // failure flag set to 1
+                0, // payload length low
+                0, // payload length high
+                0, // payload checksum low,
+                0, // payload checksum high
+                (byte) 0b01110101, // header checksum low
+                (byte) 0b10000001 // header checksum high
+        };
+        assertArrayEquals(expected, target.array());
+    }
+
+    @Test
+    public void testEncode_RoundTrip() {
+        ProtocolPolicy policy = protocolVersion -> PayloadChecksum.CRC32C;
+        FrameEncoder encoder = new FrameEncoder(policy);
+        byte[] payload = new byte[1000];
+        new Random().nextBytes(payload);
+        ByteBuffer target = ByteBuffer.allocate(encoder.getHeaderLength((byte) 2) + payload.length - 10);
+        encoder.encode(target, (byte) 2, (byte) 5, (byte) 3, (byte) 4, (byte) 1, payload, 10, payload.length - 10);
+        assertFalse(target.hasRemaining());
+
+        FrameDecoder decoder = new FrameDecoder(policy);
+        assertEquals(FrameDecoder.Result.FRAME, decoder.decode(target.flip()));
+        assertEquals(5, decoder.getMessageId());
+        assertEquals(ByteBuffer.wrap(payload, 10, payload.length - 10), decoder.getPayload());
+    }
+
+    @Test
+    public void testEncodeHeader_Compact() {
+        FrameEncoder encoder = new FrameEncoder(compactPolicy(HeaderFormat.COMPACT));
+        ByteBuffer target = ByteBuffer.allocate(encoder.getHeaderLength((byte) 1));
+        int length = encoder.encodeHeader(target, (byte) 1, (byte) 0, Packet.TYPE_ACK, (byte) 1, (byte) 0, 0, 0, true, true);
+
+        assertEquals(9, length);
+        assertEquals(0xF, target.get(0));
+        assertEquals(0xB, target.get(1));
+        assertEquals(0b1100, target.get(2)); // flags omitted, no payload, versions never omitted by COMPACT
+        assertEquals(1, target.get(3));
+        assertEquals(0, target.get(4));
+        assertEquals(Packet.TYPE_ACK, target.get(5));
+        assertEquals(1, target.get(6));
+    }
+
+    @Test
+    public void testEncode_CompactRoundTrip() {
+        ProtocolPolicy policy = compactPolicy(HeaderFormat.COMPACT_SESSION);
+        FrameEncoder encoder = new FrameEncoder(policy);
+        FrameDecoder decoder = new FrameDecoder(policy);
+        byte[] payload = new byte[300];
+        new Random().nextBytes(payload);
+        ByteBuffer target = ByteBuffer.allocate(encoder.getHeaderLength((byte) 2) + payload.length);
+        int payloadChecksum = PayloadChecksum.CRC32C.compute(payload, 0, payload.length);
+
+        encoder.encodeHeader(target, (byte) 2, (byte) 5, (byte) 3, (byte) 4, (byte) 1, payload.length, payloadChecksum, false, false);
+        target.put(payload);
+        assertEquals(FrameDecoder.Result.FRAME, decoder.decode(target.flip()));
+        assertEquals(ByteBuffer.wrap(payload), decoder.getPayload());
+
+        target.clear();
+        int length = encoder.encodeHeader(target, (byte) 2, (byte) 6, (byte) 3, (byte) 4, (byte) 0, 0, 0, true, true);
+        assertEquals(7, length);
+        assertEquals(FrameDecoder.Result.FRAME, decoder.decode(target.flip()));
+        assertEquals(2, decoder.getProtocolVersion());
+        assertEquals(6, decoder.getMessageId());
+        assertEquals(3, decoder.getType());
+        assertEquals(4, decoder.getVersion());
+        assertEquals(0, decoder.getFlags());
+        assertEquals(0, decoder.getPayloadLength());
+    }
+
+    static ProtocolPolicy compactPolicy(HeaderFormat format) {
+        return new ProtocolPolicy() {
+            @Override
+            public PayloadChecksum getPayloadChecksum(byte protocolVersion) {
+                return PayloadChecksum.CRC32C;
+            }
+
+            @Override
+            public HeaderFormat getHeaderFormat(byte protocolVersion) {
+                return format;
+            }
+        };
+    }
+
+}
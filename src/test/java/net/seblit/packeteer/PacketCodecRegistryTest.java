@@ -0,0 +1,82 @@
+package net.seblit.packeteer;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class PacketCodecRegistryTest {
+
+    @Test
+    public void testGet() {
+        PacketCodec<?> codec = mockCodec((byte) 1, (byte) 2);
+        PacketCodec<?> highCodec = mockCodec((byte) 200, (byte) 255);
+        PacketCodecRegistry registry = new PacketCodecRegistry();
+        registry.register(codec);
+        registry.register(highCodec);
+
+        assertSame(codec, registry.get((byte) 1, (byte) 2));
+        assertSame(codec, registry.get(new Packet((byte) 1, (byte) 2, (byte) 0)));
+        assertSame(highCodec, registry.get((byte) 200, (byte) 255));
+        assertNull(registry.get((byte) 1, (byte) 3));
+        assertNull(registry.get((byte) 2, (byte) 2));
+    }
+
+    @Test
+    public void testRegister_Duplicate() {
+        PacketCodecRegistry registry = new PacketCodecRegistry();
+        registry.register(mockCodec((byte) 1, (byte) 1));
+        assertThrows(IllegalArgumentException.class, () -> registry.register(mockCodec((byte) 1, (byte) 1)));
+    }
+
+    @Test
+    public void testRegister_Ack() {
+        PacketCodecRegistry registry = new PacketCodecRegistry();
+        assertThrows(IllegalArgumentException.class, () -> registry.register(mockCodec(Packet.TYPE_ACK, (byte) 1)));
+    }
+
+    @Test
+    public void testCreate() throws ProcessingException {
+        PacketCodec<String> codec = mockCodec((byte) 1, (byte) 2);
+        PacketCodecRegistry registry = new PacketCodecRegistry();
+        registry.register(codec, TestPacket::new);
+
+        IncomingPacket packet = registry.create((byte) 1, (byte) 1, (byte) 2, (byte) 5);
+        assertSame(codec, ((TestPacket) packet).getCodec());
+        assertEquals(5, packet.getFlags());
+        assertThrows(ProcessingException.class, () -> registry.create((byte) 1, (byte) 1, (byte) 3, (byte) 0));
+    }
+
+    @Test
+    public void testCreate_Fallback() throws ProcessingException {
+        PacketFactory fallback = mock(PacketFactory.class);
+        IncomingPacket fallbackPacket = mock(IncomingPacket.class);
+        when(fallback.create((byte) 1, (byte) 1, (byte) 2, (byte) 0)).thenReturn(fallbackPacket);
+        PacketCodecRegistry registry = new PacketCodecRegistry(fallback);
+        // codecs registered without factory are only used to send
+        registry.register(mockCodec((byte) 1, (byte) 2));
+
+        assertSame(fallbackPacket, registry.create((byte) 1, (byte) 1, (byte) 2, (byte) 0));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> PacketCodec<T> mockCodec(byte type, byte version) {
+        PacketCodec<T> codec = mock(PacketCodec.class);
+        when(codec.getType()).thenReturn(type);
+        when(codec.getVersion()).thenReturn(version);
+        return codec;
+    }
+
+    private static class TestPacket extends DecodedPacket<String> {
+
+        private TestPacket(PacketCodec<String> codec, byte flags) {
+            super(codec, flags);
+        }
+
+        @Override
+        public void process(@NotNull String value) {
+        }
+    }
+
+}
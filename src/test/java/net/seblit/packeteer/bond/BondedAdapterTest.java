@@ -0,0 +1,347 @@
+package net.seblit.packeteer.bond;
+
+import net.seblit.packeteer.Client;
+import net.seblit.packeteer.FrameEncoder;
+import net.seblit.packeteer.IncomingPacket;
+import net.seblit.packeteer.NetworkAdapter;
+import net.seblit.packeteer.NetworkException;
+import net.seblit.packeteer.Packet;
+import net.seblit.packeteer.ProcessingException;
+import net.seblit.packeteer.ProtocolPolicy;
+import net.seblit.packeteer.sim.LinkProfile;
+import net.seblit.packeteer.sim.LinkSimulator;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BondedAdapterTest {
+
+    private static final long READ_TIMEOUT_MILLIS = 50;
+    private static final long GAP_TIMEOUT_MILLIS = 20;
+
+    @Test
+    public void testClientAcknowledgement() throws Exception {
+        LinkSimulator first = new LinkSimulator(1, LinkProfile.PERFECT, LinkProfile.PERFECT, false, READ_TIMEOUT_MILLIS);
+        LinkSimulator second = new LinkSimulator(2, LinkProfile.PERFECT, LinkProfile.PERFECT, false, READ_TIMEOUT_MILLIS);
+        try (BondedAdapter senderAdapter = new BondedAdapter(ProtocolPolicy.DEFAULT, READ_TIMEOUT_MILLIS, GAP_TIMEOUT_MILLIS,
+                first.getEndpointA(), second.getEndpointA());
+             BondedAdapter receiverAdapter = new BondedAdapter(ProtocolPolicy.DEFAULT, READ_TIMEOUT_MILLIS, GAP_TIMEOUT_MILLIS,
+                     first.getEndpointB(), second.getEndpointB())) {
+            Client sender = new Client((byte) 1, 3, senderAdapter, (protocolVersion, type, version, flags) -> {
+                throw new AssertionError("Sender received a packet");
+            });
+            List<Byte> received = Collections.synchronizedList(new ArrayList<>());
+            Client receiver = new Client((byte) 1, 3, receiverAdapter, (protocolVersion, type, version, flags) -> new IncomingPacket(type, version, flags) {
+                @Override
+                public void process(byte @Nullable ... payload) {
+                    received.add(payload[0]);
+                }
+            });
+            Thread receiverThread = new Thread(() -> {
+                while (received.size() < 20) {
+                    try {
+                        receiver.receive();
+                    } catch (NetworkException | ProcessingException ignored) {
+                    }
+                }
+            });
+            receiverThread.start();
+            for (int i = 0; i < 20; i++) {
+                sender.send(new Packet((byte) 1, (byte) 1, (byte) 1), (byte) i);
+            }
+            receiverThread.join();
+
+            for (int i = 0; i < 20; i++) {
+                assertEquals((byte) i, (byte) received.get(i));
+            }
+            long[] sentFrames = senderAdapter.getSentFrames();
+            assertTrue(sentFrames[0] > 0 && sentFrames[1] > 0);
+        }
+    }
+
+    @Test
+    public void testEstimatedRate() throws Exception {
+        // only the way to the receiver is delayed, so the round trip of each link only depends on the link carrying data
+        LinkSimulator fast = new LinkSimulator(1, new LinkProfile(0, 1_000_000, 0, 0, 0, 0, 0), LinkProfile.PERFECT,
+                false, READ_TIMEOUT_MILLIS);
+        LinkSimulator slow = new LinkSimulator(2, new LinkProfile(0, 20_000_000, 0, 0, 0, 0, 0), LinkProfile.PERFECT,
+                false, READ_TIMEOUT_MILLIS);
+        // the slow link is configured as the faster one, which the measurement corrects
+        try (BondedAdapter senderAdapter = new BondedAdapter(ProtocolPolicy.DEFAULT, READ_TIMEOUT_MILLIS, GAP_TIMEOUT_MILLIS,
+                new double[]{1, 2}, fast.getEndpointA(), slow.getEndpointA());
+             BondedAdapter receiverAdapter = new BondedAdapter(ProtocolPolicy.DEFAULT, READ_TIMEOUT_MILLIS, GAP_TIMEOUT_MILLIS,
+                     fast.getEndpointB(), slow.getEndpointB())) {
+            Client sender = new Client((byte) 1, 3, senderAdapter, (protocolVersion, type, version, flags) -> {
+                throw new AssertionError("Sender received a packet");
+            });
+            List<Byte> received = Collections.synchronizedList(new ArrayList<>());
+            Client receiver = new Client((byte) 1, 3, receiverAdapter, (protocolVersion, type, version, flags) -> new IncomingPacket(type, version, flags) {
+                @Override
+                public void process(byte @Nullable ... payload) {
+                    received.add(payload[0]);
+                }
+            });
+            Thread receiverThread = new Thread(() -> {
+                while (received.size() < 100) {
+                    try {
+                        receiver.receive();
+                    } catch (NetworkException | ProcessingException ignored) {
+                    }
+                }
+            });
+            receiverThread.start();
+            for (int i = 0; i < 100; i++) {
+                sender.send(new Packet((byte) 1, (byte) 1, (byte) 1), (byte) i);
+            }
+            receiverThread.join();
+
+            double[] estimatedRates = senderAdapter.getEstimatedRates();
+            assertTrue(estimatedRates[0] > 5 * estimatedRates[1]);
+            long[] sentFrames = senderAdapter.getSentFrames();
+            assertTrue(sentFrames[0] > 3 * sentFrames[1]);
+            assertTrue(sentFrames[1] > 0);
+        }
+    }
+
+    @Test
+    public void testWeightedByRate() throws NetworkException {
+        try (BondedAdapter adapter = new BondedAdapter(ProtocolPolicy.DEFAULT, READ_TIMEOUT_MILLIS, GAP_TIMEOUT_MILLIS,
+                new double[]{3_000, 1_000}, new BlockingLink(0), new BlockingLink(0))) {
+            byte[] frame = encode((byte) 1, (byte) 1, (byte) 0);
+            for (int i = 0; i < 1000; i++) {
+                adapter.write(frame);
+            }
+
+            assertArrayEquals(new long[]{750, 250}, adapter.getSentFrames());
+        }
+    }
+
+    @Test
+    public void testWeightedEqually() throws NetworkException {
+        // the first link writes 4 times as fast, but writes returning sooner don't imply a faster link
+        try (BondedAdapter adapter = new BondedAdapter(ProtocolPolicy.DEFAULT, READ_TIMEOUT_MILLIS, GAP_TIMEOUT_MILLIS,
+                new BlockingLink(2_000), new BlockingLink(8_000))) {
+            byte[] frame = encode((byte) 1, (byte) 1, (byte) 0);
+            for (int i = 0; i < 1000; i++) {
+                adapter.write(frame);
+            }
+
+            assertArrayEquals(new long[]{500, 500}, adapter.getSentFrames());
+        }
+    }
+
+    @Test
+    public void testHungLink() {
+        try (BondedAdapter adapter = new BondedAdapter(ProtocolPolicy.DEFAULT, READ_TIMEOUT_MILLIS, GAP_TIMEOUT_MILLIS,
+                new BlockingLink(0), new HungLink())) {
+            byte[] frame = encode((byte) 1, (byte) 1, (byte) 0);
+            assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+                for (int i = 0; i < 2000; i++) {
+                    adapter.write(frame);
+                }
+            });
+
+            long[] sentFrames = adapter.getSentFrames();
+            // the frame its writer is stuck with and a full queue
+            assertEquals(65, sentFrames[1]);
+            assertEquals(2000, sentFrames[0] + sentFrames[1]);
+        }
+    }
+
+    @Test
+    public void testHungLink_AllLinks() throws NetworkException {
+        try (BondedAdapter adapter = new BondedAdapter(ProtocolPolicy.DEFAULT, READ_TIMEOUT_MILLIS, GAP_TIMEOUT_MILLIS,
+                new HungLink())) {
+            byte[] frame = encode((byte) 1, (byte) 1, (byte) 0);
+            for (int i = 0; i < 70; i++) {
+                adapter.write(frame);
+            }
+
+            // frames that don't fit within the read timeout are discarded
+            assertEquals(65, adapter.getSentFrames()[0]);
+            assertArrayEquals(new boolean[]{true}, adapter.getFailedLinks());
+        }
+    }
+
+    @Test
+    public void testFailedLink() throws NetworkException {
+        try (BondedAdapter adapter = new BondedAdapter(ProtocolPolicy.DEFAULT, READ_TIMEOUT_MILLIS, GAP_TIMEOUT_MILLIS,
+                new BlockingLink(0), new FailingLink())) {
+            byte[] frame = encode((byte) 1, (byte) 1, (byte) 0);
+            for (int i = 0; i < 2000; i++) {
+                adapter.write(frame);
+            }
+
+            long[] sentFrames = adapter.getSentFrames();
+            assertTrue(sentFrames[1] > 0 && sentFrames[1] < 200);
+            assertArrayEquals(new boolean[]{false, true}, adapter.getFailedLinks());
+        }
+    }
+
+    @Test
+    public void testInvalidRates() {
+        assertThrows(IllegalArgumentException.class, () -> new BondedAdapter(ProtocolPolicy.DEFAULT, READ_TIMEOUT_MILLIS,
+                GAP_TIMEOUT_MILLIS, new double[]{1}, new BlockingLink(0), new BlockingLink(0)));
+        assertThrows(IllegalArgumentException.class, () -> new BondedAdapter(ProtocolPolicy.DEFAULT, READ_TIMEOUT_MILLIS,
+                GAP_TIMEOUT_MILLIS, new double[]{1, 0}, new BlockingLink(0), new BlockingLink(0)));
+    }
+
+    @Test
+    public void testRetransmissionOnDifferentLink() throws NetworkException {
+        try (BondedAdapter adapter = new BondedAdapter(ProtocolPolicy.DEFAULT, READ_TIMEOUT_MILLIS, GAP_TIMEOUT_MILLIS,
+                new BlockingLink(0), new BlockingLink(0), new BlockingLink(0))) {
+            byte[] frame = encode((byte) 7, (byte) 1, (byte) 1);
+            int previousLink = -1;
+            for (int i = 0; i < 10; i++) {
+                long[] before = adapter.getSentFrames();
+                adapter.write(frame);
+                long[] after = adapter.getSentFrames();
+                int link = -1;
+                for (int j = 0; j < after.length; j++) {
+                    if (after[j] != before[j]) {
+                        link = j;
+                    }
+                }
+                assertNotEquals(previousLink, link);
+                previousLink = link;
+            }
+        }
+    }
+
+    @Test
+    public void testReorder() throws NetworkException {
+        LinkSimulator first = new LinkSimulator(1, LinkProfile.PERFECT, LinkProfile.PERFECT, false, READ_TIMEOUT_MILLIS);
+        LinkSimulator second = new LinkSimulator(2, LinkProfile.PERFECT, LinkProfile.PERFECT, false, READ_TIMEOUT_MILLIS);
+        try (BondedAdapter adapter = new BondedAdapter(ProtocolPolicy.DEFAULT, READ_TIMEOUT_MILLIS, 1_000,
+                first.getEndpointB(), second.getEndpointB())) {
+            byte[] frame0 = encode((byte) 0, (byte) 1, (byte) 0);
+            byte[] frame1 = encode((byte) 1, (byte) 1, (byte) 0);
+            byte[] frame2 = encode((byte) 2, (byte) 1, (byte) 0);
+            byte[] ack = encode((byte) 9, Packet.TYPE_ACK, (byte) 0);
+            second.getEndpointA().write(frame0);
+            second.getEndpointA().write(frame2);
+            LockSupport.parkNanos(10_000_000);
+            first.getEndpointA().write(ack);
+            LockSupport.parkNanos(10_000_000);
+            first.getEndpointA().write(frame1);
+
+            // frame 2 is held back until frame 1 arrived, acknowledgements aren't
+            assertArrayEquals(frame0, adapter.read(frame0.length));
+            assertArrayEquals(ack, adapter.read(ack.length));
+            assertArrayEquals(frame1, adapter.read(frame1.length));
+            assertArrayEquals(frame2, adapter.read(frame2.length));
+        }
+    }
+
+    @Test
+    public void testReorder_FirstFrame() throws NetworkException {
+        LinkSimulator first = new LinkSimulator(1, LinkProfile.PERFECT, LinkProfile.PERFECT, false, READ_TIMEOUT_MILLIS);
+        LinkSimulator second = new LinkSimulator(2, LinkProfile.PERFECT, LinkProfile.PERFECT, false, READ_TIMEOUT_MILLIS);
+        try (BondedAdapter adapter = new BondedAdapter(ProtocolPolicy.DEFAULT, READ_TIMEOUT_MILLIS, 1_000,
+                first.getEndpointB(), second.getEndpointB())) {
+            byte[] frame0 = encode((byte) 0, (byte) 1, (byte) 0);
+            byte[] frame1 = encode((byte) 1, (byte) 1, (byte) 0);
+            first.getEndpointA().write(frame1);
+            LockSupport.parkNanos(10_000_000);
+            second.getEndpointA().write(frame0);
+
+            // the first frame to arrive is held back until the first frame of the sender arrived
+            assertArrayEquals(frame0, adapter.read(frame0.length));
+            assertArrayEquals(frame1, adapter.read(frame1.length));
+        }
+    }
+
+    @Test
+    public void testGapTimeout() throws NetworkException {
+        LinkSimulator link = new LinkSimulator(1, LinkProfile.PERFECT, LinkProfile.PERFECT, false, READ_TIMEOUT_MILLIS);
+        try (BondedAdapter adapter = new BondedAdapter(ProtocolPolicy.DEFAULT, 1_000, 200, link.getEndpointB())) {
+            byte[] frame0 = encode((byte) 0, (byte) 1, (byte) 0);
+            byte[] frame2 = encode((byte) 2, (byte) 1, (byte) 0);
+            byte[] frame3 = encode((byte) 3, (byte) 1, (byte) 0);
+            link.getEndpointA().write(frame0);
+            link.getEndpointA().write(frame3);
+            link.getEndpointA().write(frame2);
+
+            assertArrayEquals(frame0, adapter.read(frame0.length));
+            // frame 1 is missing
+            assertEquals(0, adapter.read(frame2.length, 0).length);
+            assertArrayEquals(frame2, adapter.read(frame2.length));
+            assertArrayEquals(frame3, adapter.read(frame3.length));
+        }
+    }
+
+    private static byte[] encode(byte messageId, byte type, byte flags) {
+        FrameEncoder encoder = new FrameEncoder(ProtocolPolicy.DEFAULT);
+        ByteBuffer target = ByteBuffer.allocate(encoder.getHeaderLength((byte) 1));
+        encoder.encode(target, (byte) 1, messageId, type, (byte) 1, flags, null, 0, 0);
+        return target.array();
+    }
+
+    /**
+     * A link whose writes block until interrupted and whose reads never receive data
+     */
+    private static class HungLink extends BlockingLink {
+
+        private HungLink() {
+            super(0);
+        }
+
+        @Override
+        public void write(byte... data) {
+            try {
+                new CountDownLatch(1).await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * A link whose writes fail and whose reads never receive data
+     */
+    private static class FailingLink extends BlockingLink {
+
+        private FailingLink() {
+            super(0);
+        }
+
+        @Override
+        public void write(byte... data) throws NetworkException {
+            throw new NetworkException("Link failed");
+        }
+    }
+
+    /**
+     * A link whose writes block for a fixed time per byte and whose reads never receive data
+     */
+    private static class BlockingLink implements NetworkAdapter {
+
+        private final long nanosPerByte;
+
+        private BlockingLink(long nanosPerByte) {
+            this.nanosPerByte = nanosPerByte;
+        }
+
+        @Override
+        public byte @NotNull [] read(int count) throws NetworkException {
+            LockSupport.parkNanos(READ_TIMEOUT_MILLIS * 1_000_000L);
+            throw new NetworkException("No data received within read timeout");
+        }
+
+        @Override
+        public void write(byte... data) throws NetworkException {
+            LockSupport.parkNanos(data.length * nanosPerByte);
+        }
+    }
+
+}
@@ -0,0 +1,39 @@
+package net.seblit.packeteer.load;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoadGeneratorTest {
+
+    @Test
+    public void testRun() throws InterruptedException {
+        LoadGenerator.Settings settings = LoadGenerator.Settings.parse("--duration=200", "--mix=1:3,2:1", "--payload=0-64", "--idle=20");
+        LoadGenerator.Report report = new LoadGenerator(settings).run();
+
+        assertTrue(report.sentPackets() > 0);
+        assertTrue(report.packetsPerSecond() > 0);
+        assertTrue(report.ackLatencyP50() > 0);
+        assertTrue(report.ackLatencyP50() <= report.ackLatencyP99());
+        assertTrue(report.ackLatencyP99() <= report.ackLatencyP999());
+    }
+
+    @Test
+    public void testRun_NoFailuresAtDeadline() throws InterruptedException {
+        // sends waiting for acknowledgement when the duration elapsed are completed instead of failing
+        LoadGenerator.Settings settings = LoadGenerator.Settings.parse("--duration=200", "--threads=4", "--latency=2000", "--idle=20");
+        LoadGenerator.Report report = new LoadGenerator(settings).run();
+
+        assertTrue(report.sentPackets() > 0);
+        assertEquals(0, report.failures());
+    }
+
+    @Test
+    public void testParse_Invalid() {
+        assertThrows(IllegalArgumentException.class, () -> LoadGenerator.Settings.parse("--unknown=1"));
+        assertThrows(IllegalArgumentException.class, () -> LoadGenerator.Settings.parse("--mix=0:1"));
+        assertThrows(IllegalArgumentException.class, () -> LoadGenerator.Settings.parse("--payload=10-5"));
+        assertThrows(IllegalArgumentException.class, () -> LoadGenerator.Settings.parse("duration"));
+    }
+
+}
@@ -0,0 +1,223 @@
+package net.seblit.packeteer.outbox;
+
+import net.seblit.packeteer.Client;
+import net.seblit.packeteer.NetworkAdapter;
+import net.seblit.packeteer.NetworkException;
+import net.seblit.packeteer.Packet;
+import net.seblit.packeteer.PacketFactory;
+import net.seblit.packeteer.PacketFailureException;
+import net.seblit.packeteer.PayloadChecksum;
+import net.seblit.packeteer.ProtocolPolicy;
+import net.seblit.packeteer.SendTimeoutException;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class MappedOutboxTest {
+
+    private static final int SEGMENT_SIZE = 70000;
+    private static final Packet ACK_PACKET = new Packet((byte) 3, (byte) 2, (byte) 0b101);
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    public void testSend_Acknowledged() throws NetworkException, IOException {
+        Client client = mockClient();
+        try (MappedOutbox outbox = new MappedOutbox(directory, SEGMENT_SIZE)) {
+            outbox.send(client, ACK_PACKET, (byte) 1, (byte) 2);
+
+            verify(client).sendBuffer(eq(ACK_PACKET), any(ByteBuffer.class));
+            assertEquals(0, outbox.getPendingCount());
+        }
+        assertEquals(0, countSegments());
+    }
+
+    @Test
+    public void testSend_NoAck() throws NetworkException, IOException {
+        Client client = mockClient();
+        Packet packet = new Packet((byte) 3, (byte) 1, (byte) 0);
+        byte[] payload = {1, 2};
+        try (MappedOutbox outbox = new MappedOutbox(directory, SEGMENT_SIZE)) {
+            outbox.send(client, packet, payload);
+
+            verify(client).send(packet, payload);
+            assertEquals(0, outbox.getPendingCount());
+        }
+    }
+
+    @Test
+    public void testSend_PacketFailure() throws NetworkException, IOException {
+        Client client = mockClient();
+        when(client.sendBuffer(any(Packet.class), any(ByteBuffer.class))).thenThrow(new PacketFailureException());
+        try (MappedOutbox outbox = new MappedOutbox(directory, SEGMENT_SIZE)) {
+            assertThrows(PacketFailureException.class, () -> outbox.send(client, ACK_PACKET, (byte) 1));
+            assertEquals(0, outbox.getPendingCount());
+        }
+    }
+
+    @Test
+    public void testReplay() throws NetworkException, IOException {
+        Client failingClient = mockClient();
+        when(failingClient.sendBuffer(any(Packet.class), any(ByteBuffer.class))).thenThrow(new SendTimeoutException());
+        try (MappedOutbox outbox = new MappedOutbox(directory, SEGMENT_SIZE)) {
+            assertThrows(SendTimeoutException.class, () -> outbox.send(failingClient, ACK_PACKET, (byte) 1, (byte) 2));
+            assertThrows(SendTimeoutException.class, () -> outbox.send(failingClient, ACK_PACKET));
+            assertEquals(2, outbox.getPendingCount());
+        }
+
+        List<byte[]> replayed = new ArrayList<>();
+        Client client = mockRecordingClient(replayed);
+        try (MappedOutbox outbox = new MappedOutbox(directory, SEGMENT_SIZE)) {
+            assertEquals(2, outbox.getPendingCount());
+            assertEquals(2, outbox.replay(client));
+            assertEquals(0, outbox.getPendingCount());
+        }
+        assertEquals(2, replayed.size());
+        assertArrayEquals(new byte[]{1, 2}, replayed.get(0));
+        assertArrayEquals(new byte[0], replayed.get(1));
+        assertEquals(0, countSegments());
+    }
+
+    @Test
+    public void testReplay_Failure() throws NetworkException, IOException {
+        Client client = mockClient();
+        when(client.sendBuffer(any(Packet.class), any(ByteBuffer.class))).thenThrow(new SendTimeoutException());
+        try (MappedOutbox outbox = new MappedOutbox(directory, SEGMENT_SIZE)) {
+            assertThrows(SendTimeoutException.class, () -> outbox.send(client, ACK_PACKET, (byte) 1));
+            assertThrows(SendTimeoutException.class, () -> outbox.replay(client));
+            assertEquals(1, outbox.getPendingCount());
+
+            reset(client);
+            when(client.sendBuffer(any(Packet.class), any(ByteBuffer.class))).thenThrow(new PacketFailureException());
+            assertEquals(0, outbox.replay(client));
+            assertEquals(0, outbox.getPendingCount());
+        }
+    }
+
+    @Test
+    public void testSend_PayloadTooLarge() throws IOException {
+        // delta encoded payloads may be one byte shorter
+        ProtocolPolicy policy = new ProtocolPolicy() {
+            @Override
+            public @NotNull PayloadChecksum getPayloadChecksum(byte protocolVersion) {
+                return PayloadChecksum.CRC16;
+            }
+
+            @Override
+            public boolean isDeltaEncoded(byte protocolVersion, byte type) {
+                return true;
+            }
+        };
+        Client client = new Client((byte) 1, 1, mock(NetworkAdapter.class), mock(PacketFactory.class), policy);
+        try (MappedOutbox outbox = new MappedOutbox(directory, SEGMENT_SIZE)) {
+            assertThrows(IllegalArgumentException.class, () -> outbox.send(client, ACK_PACKET, new byte[0xFFFF]));
+            assertEquals(0, outbox.getPendingCount());
+        }
+    }
+
+    @Test
+    public void testReplay_InvalidEntry() throws NetworkException, IOException {
+        Client failingClient = mockClient();
+        when(failingClient.sendBuffer(any(Packet.class), any(ByteBuffer.class))).thenThrow(new SendTimeoutException());
+        try (MappedOutbox outbox = new MappedOutbox(directory, SEGMENT_SIZE)) {
+            assertThrows(SendTimeoutException.class, () -> outbox.send(failingClient, ACK_PACKET, (byte) 1));
+            assertThrows(SendTimeoutException.class, () -> outbox.send(failingClient, ACK_PACKET, (byte) 2));
+        }
+
+        // for instance after the policy of the client changed
+        List<byte[]> replayed = new ArrayList<>();
+        Client client = mockRecordingClient(replayed);
+        when(client.sendBuffer(any(Packet.class), argThat(payload -> payload.get(payload.position()) == 1)))
+                .thenThrow(new IllegalArgumentException());
+        try (MappedOutbox outbox = new MappedOutbox(directory, SEGMENT_SIZE)) {
+            assertEquals(1, outbox.replay(client));
+            assertEquals(0, outbox.getPendingCount());
+        }
+        assertEquals(1, replayed.size());
+        assertArrayEquals(new byte[]{2}, replayed.get(0));
+    }
+
+    @Test
+    public void testRecover_TornEntry() throws NetworkException, IOException {
+        Client failingClient = mockClient();
+        when(failingClient.sendBuffer(any(Packet.class), any(ByteBuffer.class))).thenThrow(new SendTimeoutException());
+        try (MappedOutbox outbox = new MappedOutbox(directory, SEGMENT_SIZE)) {
+            assertThrows(SendTimeoutException.class, () -> outbox.send(failingClient, ACK_PACKET, (byte) 1));
+            assertThrows(SendTimeoutException.class, () -> outbox.send(failingClient, ACK_PACKET, (byte) 2));
+        }
+        try (RandomAccessFile file = new RandomAccessFile(directory.resolve("segment-0.outbox").toFile(), "rw")) {
+            file.seek(21); // payload of the second entry
+            file.write(3);
+        }
+
+        List<byte[]> replayed = new ArrayList<>();
+        try (MappedOutbox outbox = new MappedOutbox(directory, SEGMENT_SIZE)) {
+            assertEquals(1, outbox.getPendingCount());
+            outbox.replay(mockRecordingClient(replayed));
+        }
+        assertArrayEquals(new byte[]{1}, replayed.get(0));
+    }
+
+    @Test
+    public void testSend_SegmentRollover() throws NetworkException, IOException {
+        Client failingClient = mockClient();
+        when(failingClient.sendBuffer(any(Packet.class), any(ByteBuffer.class))).thenThrow(new SendTimeoutException());
+        Client client = mockClient();
+        try (MappedOutbox outbox = new MappedOutbox(directory, SEGMENT_SIZE)) {
+            assertThrows(SendTimeoutException.class, () -> outbox.send(failingClient, ACK_PACKET, new byte[40000]));
+            outbox.send(client, ACK_PACKET, new byte[40000]);
+            assertEquals(2, countSegments());
+
+            outbox.replay(client);
+            assertEquals(1, countSegments());
+        }
+    }
+
+    @Test
+    public void testConstructor_SegmentTooSmall() {
+        assertThrows(IllegalArgumentException.class, () -> new MappedOutbox(directory, 0xFFFF));
+    }
+
+    private static Client mockClient() {
+        Client client = mock(Client.class);
+        when(client.getMaxPayloadLength(anyByte())).thenReturn(0xFFFF);
+        return client;
+    }
+
+    private static Client mockRecordingClient(List<byte[]> payloads) throws NetworkException {
+        Client client = mockClient();
+        when(client.sendBuffer(any(Packet.class), any(ByteBuffer.class))).then(invocation -> {
+            Packet packet = invocation.getArgument(0);
+            assertEquals(ACK_PACKET.getType(), packet.getType());
+            assertEquals(ACK_PACKET.getVersion(), packet.getVersion());
+            assertEquals(ACK_PACKET.getFlags(), packet.getFlags());
+            ByteBuffer payload = invocation.getArgument(1);
+            byte[] copy = new byte[payload.remaining()];
+            payload.get(copy);
+            payloads.add(copy);
+            return (byte) payloads.size();
+        });
+        return client;
+    }
+
+    private long countSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+
+}
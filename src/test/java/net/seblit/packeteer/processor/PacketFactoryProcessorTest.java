@@ -0,0 +1,155 @@
+package net.seblit.packeteer.processor;
+
+import net.seblit.packeteer.IncomingPacket;
+import net.seblit.packeteer.PacketFactory;
+import net.seblit.packeteer.ProcessingException;
+import net.seblit.packeteer.RegisterPacket;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PacketFactoryProcessorTest {
+
+    @Test
+    public void testCreate() throws ProcessingException {
+        PacketFactory factory = new GeneratedPacketFactory();
+
+        IncomingPacket flagsPacket = factory.create((byte) 1, (byte) 1, (byte) 1, (byte) 5);
+        assertInstanceOf(FlagsPacket.class, flagsPacket);
+        assertEquals(5, flagsPacket.getFlags());
+        IncomingPacket fullPacket = factory.create((byte) 1, (byte) 200, (byte) 2, (byte) 3);
+        assertInstanceOf(FullPacket.class, fullPacket);
+        assertEquals((byte) 200, fullPacket.getType());
+        assertEquals(2, fullPacket.getVersion());
+        assertEquals(3, fullPacket.getFlags());
+        assertInstanceOf(FlagsPacketV2.class, factory.create((byte) 1, (byte) 1, (byte) 2, (byte) 0));
+    }
+
+    @Test
+    public void testCreate_Unknown() {
+        PacketFactory factory = new GeneratedPacketFactory();
+
+        assertThrows(ProcessingException.class, () -> factory.create((byte) 1, (byte) 1, (byte) 3, (byte) 0));
+        assertThrows(ProcessingException.class, () -> factory.create((byte) 1, (byte) 2, (byte) 1, (byte) 0));
+    }
+
+    @Test
+    public void testCreate_SeparateFactory() throws ProcessingException {
+        assertInstanceOf(SeparatePacket.class, new SeparateFactory().create((byte) 1, (byte) 3, (byte) 1, (byte) 0));
+        assertThrows(ProcessingException.class, () -> new GeneratedPacketFactory().create((byte) 1, (byte) 3, (byte) 1, (byte) 0));
+    }
+
+    @Test
+    public void testProcess_Invalid(@TempDir Path directory) throws IOException {
+        assertCompilationError(directory, "Type 0 is reserved", """
+                @RegisterPacket(type = 0, version = 1)
+                public class Invalid extends IncomingPacket {
+                    public Invalid(byte flags) { super((byte) 0, (byte) 1, flags); }
+                    public void process(byte... payload) {}
+                }
+                """);
+        assertCompilationError(directory, "must extend IncomingPacket", """
+                @RegisterPacket(type = 1, version = 1)
+                public class Invalid {
+                    public Invalid(byte flags) {}
+                }
+                """);
+        assertCompilationError(directory, "may not be abstract", """
+                @RegisterPacket(type = 1, version = 1)
+                public abstract class Invalid extends IncomingPacket {
+                    public Invalid(byte flags) { super((byte) 1, (byte) 1, flags); }
+                }
+                """);
+        assertCompilationError(directory, "non-private constructor", """
+                @RegisterPacket(type = 1, version = 1)
+                public class Invalid extends IncomingPacket {
+                    private Invalid(byte flags) { super((byte) 1, (byte) 1, flags); }
+                    public Invalid(int flags) { super((byte) 1, (byte) 1, (byte) flags); }
+                    public void process(byte... payload) {}
+                }
+                """);
+        assertCompilationError(directory, "already registered", """
+                public class Invalid {
+                    @RegisterPacket(type = 1, version = 1)
+                    public static class First extends IncomingPacket {
+                        public First(byte flags) { super((byte) 1, (byte) 1, flags); }
+                        public void process(byte... payload) {}
+                    }
+                    @RegisterPacket(type = 1, version = 1)
+                    public static class Second extends IncomingPacket {
+                        public Second(byte flags) { super((byte) 1, (byte) 1, flags); }
+                        public void process(byte... payload) {}
+                    }
+                }
+                """);
+    }
+
+    private static void assertCompilationError(Path directory, String expectedMessage, String body) throws IOException {
+        Path source = directory.resolve("Invalid.java");
+        Files.writeString(source, "import net.seblit.packeteer.*;\n" + body);
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        int result = compiler.run(null, null, errors, "-proc:only", "-processor", PacketFactoryProcessor.class.getName(),
+                "-cp", System.getProperty("java.class.path"), "-s", directory.toString(), source.toString());
+
+        assertNotEquals(0, result);
+        assertTrue(errors.toString().contains(expectedMessage), errors::toString);
+    }
+
+    @RegisterPacket(type = 1, version = 1)
+    static class FlagsPacket extends IncomingPacket {
+
+        FlagsPacket(byte flags) {
+            super((byte) 1, (byte) 1, flags);
+        }
+
+        @Override
+        public void process(byte... payload) {
+        }
+    }
+
+    @RegisterPacket(type = 1, version = 2)
+    static class FlagsPacketV2 extends IncomingPacket {
+
+        FlagsPacketV2(byte flags) {
+            super((byte) 1, (byte) 2, flags);
+        }
+
+        @Override
+        public void process(byte... payload) {
+        }
+    }
+
+    @RegisterPacket(type = (byte) 200, version = 2)
+    static class FullPacket extends IncomingPacket {
+
+        FullPacket(byte type, byte version, byte flags) {
+            super(type, version, flags);
+        }
+
+        @Override
+        public void process(byte... payload) {
+        }
+    }
+
+    @RegisterPacket(type = 3, version = 1, factory = "SeparateFactory")
+    static class SeparatePacket extends IncomingPacket {
+
+        SeparatePacket(byte flags) {
+            super((byte) 3, (byte) 1, flags);
+        }
+
+        @Override
+        public void process(byte... payload) {
+        }
+    }
+
+}
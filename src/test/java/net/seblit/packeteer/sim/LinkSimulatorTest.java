@@ -0,0 +1,118 @@
+package net.seblit.packeteer.sim;
+
+import net.seblit.packeteer.Client;
+import net.seblit.packeteer.IncomingPacket;
+import net.seblit.packeteer.NetworkAdapter;
+import net.seblit.packeteer.NetworkException;
+import net.seblit.packeteer.Packet;
+import net.seblit.packeteer.ProcessingException;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LinkSimulatorTest {
+
+    private static final long IDLE_TIMEOUT_MILLIS = 50;
+
+    @Test
+    public void testPerfectLink() throws NetworkException {
+        LinkSimulator simulator = new LinkSimulator(1, LinkProfile.PERFECT, IDLE_TIMEOUT_MILLIS);
+        byte[] data = {1, 2, 3, 4, 5};
+        simulator.getEndpointA().write(data);
+        simulator.getEndpointB().write((byte) 6);
+
+        assertArrayEquals(new byte[]{1, 2}, simulator.getEndpointB().read(2));
+        assertArrayEquals(new byte[]{3, 4, 5}, simulator.getEndpointB().read(3));
+        assertArrayEquals(new byte[]{6}, simulator.getEndpointA().read(1));
+        assertEquals(5, simulator.getStatisticsAToB().deliveredBytes());
+    }
+
+    @Test
+    public void testVirtualTime() throws NetworkException {
+        long latency = 5_000_000_000L;
+        LinkProfile profile = new LinkProfile(100, latency, 0, 0, 0, 0, 0);
+        LinkSimulator simulator = new LinkSimulator(1, profile, IDLE_TIMEOUT_MILLIS);
+        simulator.getEndpointA().write(new byte[100]);
+        simulator.getEndpointB().read(100);
+
+        // 100 bytes at 100 bytes per second take one second plus latency
+        assertEquals(latency + 1_000_000_000L, simulator.getTimeNanos());
+    }
+
+    @Test
+    public void testReadTimeout() {
+        LinkSimulator simulator = new LinkSimulator(1, LinkProfile.PERFECT, IDLE_TIMEOUT_MILLIS);
+        assertThrows(NetworkException.class, () -> simulator.getEndpointA().read(1));
+    }
+
+    @Test
+    public void testTimedRead() throws NetworkException {
+        LinkSimulator simulator = new LinkSimulator(1, LinkProfile.PERFECT, IDLE_TIMEOUT_MILLIS);
+        simulator.getEndpointA().write((byte) 1, (byte) 2, (byte) 3);
+
+        assertArrayEquals(new byte[]{1, 2}, simulator.getEndpointB().read(2, 0));
+        assertArrayEquals(new byte[]{3}, simulator.getEndpointB().read(2, 1_000_000));
+        assertArrayEquals(new byte[0], simulator.getEndpointB().read(2, 0));
+    }
+
+    @Test
+    public void testTimedRead_IdleTimeout() throws NetworkException {
+        LinkSimulator simulator = new LinkSimulator(1, LinkProfile.PERFECT, IDLE_TIMEOUT_MILLIS);
+        simulator.getEndpointA().write((byte) 1);
+
+        // the idle timeout elapses first and returns the arrived bytes instead of throwing
+        long start = System.nanoTime();
+        assertArrayEquals(new byte[]{1}, simulator.getEndpointB().read(2, 10_000_000_000L));
+        assertTrue(System.nanoTime() - start < 5_000_000_000L);
+        assertArrayEquals(new byte[0], simulator.getEndpointB().read(2, 10_000_000_000L));
+    }
+
+    @Test
+    public void testDeterministicImpairments() throws NetworkException {
+        LinkProfile profile = new LinkProfile(0, 0, 0, 0.1, 0.1, 0.1, 0.1);
+        byte[] first = transmitThroughLossyLink(42, profile);
+        byte[] second = transmitThroughLossyLink(42, profile);
+        assertArrayEquals(first, second);
+    }
+
+    @Test
+    public void testClientAcknowledgement() throws Exception {
+        LinkProfile profile = new LinkProfile(9600, 10_000_000L, 1_000_000L, 0, 0, 0, 0);
+        LinkSimulator simulator = new LinkSimulator(7, profile, IDLE_TIMEOUT_MILLIS);
+        AtomicInteger processed = new AtomicInteger();
+        Client sender = new Client((byte) 1, 3, simulator.getEndpointA(), (protocol, type, version, flags) -> {
+            throw new ProcessingException("Sender does not expect packets");
+        });
+        Client receiver = new Client((byte) 1, 3, simulator.getEndpointB(), (protocol, type, version, flags) -> new IncomingPacket(type, version, flags) {
+            @Override
+            public void process(byte @Nullable ... payload) {
+                processed.incrementAndGet();
+            }
+        });
+        Thread receiverThread = new Thread(() -> {
+            try {
+                receiver.receive();
+            } catch (NetworkException | ProcessingException ignored) {
+            }
+        });
+        receiverThread.start();
+        sender.send(new Packet((byte) 1, (byte) 1, (byte) 1), new byte[]{1, 2, 3});
+        receiverThread.join();
+
+        assertEquals(1, processed.get());
+    }
+
+    private static byte[] transmitThroughLossyLink(long seed, LinkProfile profile) throws NetworkException {
+        LinkSimulator simulator = new LinkSimulator(seed, profile, IDLE_TIMEOUT_MILLIS);
+        NetworkAdapter endpointA = simulator.getEndpointA();
+        for (int i = 0; i < 100; i++) {
+            endpointA.write((byte) i, (byte) (i + 1), (byte) (i + 2), (byte) (i + 3));
+        }
+        int available = (int) (simulator.getStatisticsAToB().writtenBytes() - simulator.getStatisticsAToB().droppedBytes());
+        return simulator.getEndpointB().read(available);
+    }
+
+}